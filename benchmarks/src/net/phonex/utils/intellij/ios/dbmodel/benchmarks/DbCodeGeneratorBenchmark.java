@@ -0,0 +1,106 @@
+package net.phonex.utils.intellij.ios.dbmodel.benchmarks;
+
+import net.phonex.utils.intellij.ios.dbmodel.builders.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the DB model string generators over synthetic models.
+ * Run main() to get allocation rate per generated output as well (GC profiler).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DbCodeGeneratorBenchmark {
+    private static final String PREFIX = "PEX_DBBENCH";
+
+    // Property types of the synthetic model, cycled over columns.
+    private static final String[][] TYPES = {
+            {"NSString *", "true"},
+            {"NSNumber *", "false"},
+            {"NSDate *", "false"},
+            {"BOOL", "false"},
+            {"int", "false"},
+            {"double", "false"},
+            {"NSData *", "false"},
+    };
+
+    @Param({"10", "100", "1000"})
+    public int properties;
+
+    private List<String> names;
+    private DbCodeGenerator generator;
+    private DbSchema schema;
+    private DbModelOptions options;
+    private TypeRegistry typeRegistry;
+
+    @Setup
+    public void setUp() {
+        names = new ArrayList<String>(properties);
+        final List<DbColumn> columns = new ArrayList<DbColumn>(properties);
+        for (int i = 0; i < properties; i++) {
+            final String name = "someProperty" + i;
+            final String[] type = TYPES[i % TYPES.length];
+            names.add(name);
+            columns.add(new DbColumn(name, DbColumn.toFieldName(PREFIX, name), type[0], Boolean.parseBoolean(type[1])));
+        }
+
+        options = new DbModelOptions();
+        typeRegistry = TypeRegistry.create(options, null);
+        schema = new DbSchema("PEXDbBench", PREFIX, columns);
+        generator = new DbCodeGenerator(schema, options, typeRegistry);
+    }
+
+    @Benchmark
+    public String createTable() {
+        return generator.generateCreateTableString();
+    }
+
+    @Benchmark
+    public String createFromCursor() {
+        return generator.generateCreateFromCursorMethod();
+    }
+
+    @Benchmark
+    public String getDbContentValues() {
+        return generator.generateGetDbContentValuesMethod();
+    }
+
+    @Benchmark
+    public GeneratedModel generateAll() {
+        return new DbCodeGenerator(schema, options, typeRegistry).generate();
+    }
+
+    /**
+     * Camel case to snake case conversion, done per declarator when columns are resolved.
+     */
+    @Benchmark
+    public int fieldNames() {
+        int len = 0;
+        for (String name : names) {
+            len += DbColumn.toFieldName(PREFIX, name).length();
+        }
+
+        return len;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(DbCodeGeneratorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
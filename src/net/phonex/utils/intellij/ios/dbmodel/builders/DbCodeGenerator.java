@@ -0,0 +1,1366 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates DB model code from the schema. Does not touch PSI, so it can run outside of read / write actions.
+ * Results are cached by schema, options and type mappings.
+ */
+public class DbCodeGenerator {
+    private static final Logger LOG = Logger.getInstance(DbCodeGenerator.class);
+    private static final int CACHE_SIZE = 64;
+
+    // Rows inserted in one transaction by the generated batch insert.
+    public static final int BATCH_CHUNK_SIZE = 500;
+
+    // Instance variable holding the dirty columns bitset.
+    public static final String DIRTY_IVAR = "_dirtyColumns";
+    private static final Map<String, GeneratedModel> CACHE = new LinkedHashMap<String, GeneratedModel>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GeneratedModel> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final DbSchema schema;
+    private final List<DbColumn> columns;
+    private final DbModelOptions options;
+    private final TypeRegistry typeRegistry;
+
+    public DbCodeGenerator(DbSchema schema, DbModelOptions options, TypeRegistry typeRegistry) {
+        this.schema = schema;
+        this.columns = schema.columns;
+        this.options = options == null ? new DbModelOptions() : options;
+        this.typeRegistry = typeRegistry;
+    }
+
+    /**
+     * Returns generated code for the schema, cached result is used if available.
+     * @param schema
+     * @param options
+     * @param typeRegistry
+     * @return
+     */
+    public static GeneratedModel generateCached(DbSchema schema, DbModelOptions options, TypeRegistry typeRegistry) {
+        final String key = schema.getSignature() + "|" + options + "|" + typeRegistry.getSignature();
+        synchronized (CACHE){
+            final GeneratedModel cached = CACHE.get(key);
+            if (cached != null){
+                return cached;
+            }
+        }
+
+        final GeneratedModel generated = new DbCodeGenerator(schema, options, typeRegistry).generate();
+        synchronized (CACHE){
+            CACHE.put(key, generated);
+        }
+
+        return generated;
+    }
+
+    /**
+     * Generates all the code for the schema.
+     * @return
+     */
+    public GeneratedModel generate() {
+        final GeneratedModel model = new GeneratedModel();
+        model.columnsStructName = getColumnsStructName();
+        model.createTable = generateCreateTableString();
+        model.createIndexes = generateCreateIndexesMethod();
+        model.createFromCursor = generateCreateFromCursorMethod();
+        model.columnsStruct = generateColumnsStruct();
+        model.bindCursorColumns = generateBindCursorColumnsMethod();
+        model.createFromCursorIndexed = generateCreateFromCursorIndexedMethod();
+        model.createFromCursorBinding = generateCreateFromCursorBindingMethod();
+        model.loadAllFromCursor = generateLoadAllFromCursorMethod();
+        model.contentValues = generateGetDbContentValuesMethod();
+        model.insertStatement = generateInsertStatementMethod();
+        model.bindToStatement = generateBindToStatementMethod();
+        model.insertBatch = generateInsertBatchMethod();
+        if (options.fullProjection){
+            model.fullProjection = generateFullProjectionMethod();
+        }
+        for (Map.Entry<String, List<DbColumn>> entry : getProjections().entrySet()) {
+            model.projections.add(generateProjectionMethod(entry.getKey(), entry.getValue()));
+            model.projections.add(generateProjectionLoaderMethod(entry.getKey(), entry.getValue()));
+        }
+
+        if (options.dirtyTracking){
+            model.dirtyExtension = generateDirtyExtension();
+            model.dirtyMethods.addAll(generateDirtySetters());
+            model.dirtyMethods.add(generateGetDirtyContentValuesMethod());
+            model.dirtyMethods.add(generateIsDirtyMethod());
+            model.dirtyMethods.add(generateClearDirtyMethod());
+        }
+
+        if (options.identityCache){
+            model.identityCacheMethods.addAll(generateIdentityCacheMethods());
+        }
+
+        if (options.cursorEnumerator){
+            model.cursorEnumeratorName = getCursorEnumeratorName();
+            model.cursorEnumeratorInterface = generateCursorEnumeratorInterface();
+            model.cursorEnumeratorImplementation = generateCursorEnumeratorImplementation();
+            model.cursorEnumeratorMethods.add(generateResetForReuseMethod());
+            model.cursorEnumeratorMethods.add(generateEnumeratorForCursorMethod());
+        }
+        return model;
+    }
+
+    /**
+     * Records of globally defined constants, table name and one per column.
+     * @return new list, records may be modified by the caller.
+     */
+    public List<NewFieldRecord> generateFieldRecords() {
+        final List<NewFieldRecord> newFields = new ArrayList<NewFieldRecord>();
+        newFields.add(new NewFieldRecord(schema.getTableNameField(), schema.className, "TODO: FIXME: give a proper table name"));
+        for (DbColumn col : columns) {
+            newFields.add(new NewFieldRecord(col.fieldName, col.name));
+        }
+
+        return newFields;
+    }
+
+    public String generateCreateTableString(){
+        final String idFieldName = schema.getIdFieldName();
+        final String pkField = getPrimaryKeyField();
+        final boolean rowidAlias = isRowidAlias();
+
+        // Identifier is assigned by the DB only as a rowid alias, inserts without it would fail in WITHOUT ROWID table.
+        final boolean withoutRowid = options.withoutRowid && hasNaturalKey();
+        if (options.withoutRowid && !withoutRowid){
+            LOG.warn("WITHOUT ROWID needs a natural primary key, ignored for " + schema.className);
+        }
+
+        // Column definitions, field name and its SQL definition.
+        final List<String[]> defs = new ArrayList<String[]>();
+        if (rowidAlias){
+            defs.add(new String[]{idFieldName, "INTEGER PRIMARY KEY" + (options.autoincrement ? " AUTOINCREMENT" : "")});
+        }
+
+        for (DbColumn col : columns) {
+            final String fieldName = col.fieldName;
+            if (rowidAlias && idFieldName.equalsIgnoreCase(fieldName)){
+                continue;
+            }
+
+            final TypeMapping mapping = typeRegistry.get(col);
+            final String sqlType = mapping == null ? "TEXT" : mapping.sqlType;
+            String def = sqlType;
+            if (fieldName.equals(pkField)){
+                // SQLite allows NULL primary key in rowid tables.
+                def += " PRIMARY KEY NOT NULL";
+            } else {
+                def += getNotNullConstraint(isScalar(col, mapping), sqlType);
+            }
+
+            defs.add(new String[]{fieldName, def});
+        }
+
+        StringBuilder builder = new StringBuilder("+(NSString *) getCreateTable {\n" +
+                "    NSString *createTable = [[NSString alloc] initWithFormat:\n" +
+                "            @\"CREATE TABLE IF NOT EXISTS %@ (\"\n");
+        StringBuilder bVars = new StringBuilder(schema.getTableNameField() + ", \n ");
+        for (int i = 0; i < defs.size(); i++) {
+            final String fieldName = defs.get(i)[0];
+            final String comma = i == defs.size() - 1 ? "" : ",";
+            builder.append("                    \"  %@  ").append(defs.get(i)[1]).append(comma).append(" \"//  \t\t\t\t ").append(fieldName).append("\n");
+
+            // Variables.
+            bVars.append(fieldName).append(comma).append(" \n");
+        }
+
+        builder.append("\" )").append(withoutRowid ? " WITHOUT ROWID" : "").append(";\",\n");
+        builder.append(bVars.toString());
+        builder.append("];\n" +
+                "    return createTable;\n" +
+                "}");
+        return builder.toString();
+    }
+
+    /**
+     * Returns constant of the primary key column, identifier column if not set in options or not found.
+     * @return
+     */
+    public String getPrimaryKeyField(){
+        if (StringUtil.isEmptyOrSpaces(options.primaryKey)){
+            return schema.getIdFieldName();
+        }
+
+        final DbColumn col = getColumn(options.primaryKey.trim());
+        if (col == null){
+            LOG.warn(String.format("Primary key property %s not found in %s, using identifier", options.primaryKey, schema.className));
+            return schema.getIdFieldName();
+        }
+
+        return col.fieldName;
+    }
+
+    /**
+     * Returns column of the id property, null if the model has none.
+     * @return
+     */
+    public DbColumn getIdColumn(){
+        for (DbColumn col : columns) {
+            if (schema.getIdFieldName().equals(col.fieldName)){
+                return col;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns true if the id column is the INTEGER PRIMARY KEY alias of rowid, i.e., assigned by the DB on insert.
+     * @return
+     */
+    public boolean isRowidAlias(){
+        return getIdColumn() != null && schema.getIdFieldName().equals(getPrimaryKeyField());
+    }
+
+    /**
+     * Returns true if the primary key is a property other than id.
+     * @return
+     */
+    public boolean hasNaturalKey(){
+        return !schema.getIdFieldName().equals(getPrimaryKeyField());
+    }
+
+    /**
+     * Returns true if the column is of a mapped non-pointer type with INTEGER or REAL affinity.
+     * Unmapped types, e.g., id, Class, SEL or blocks, are not scalar.
+     * @param col
+     * @param mapping type mapping of the column, may be null.
+     * @return
+     */
+    private static boolean isScalar(DbColumn col, TypeMapping mapping){
+        return mapping != null && !isPointerType(col) && getZeroDefault(mapping.sqlType) != null;
+    }
+
+    /**
+     * Returns NOT NULL DEFAULT 0 constraint for scalar columns if enabled in options, empty string otherwise.
+     * Used by both CREATE TABLE and ALTER TABLE, so new and upgraded tables have the same schema.
+     * @param scalar column holds a mapped scalar value, see isScalar.
+     * @param sqlType
+     * @return
+     */
+    private String getNotNullConstraint(boolean scalar, String sqlType){
+        final String zero = scalar ? getZeroDefault(sqlType) : null;
+        return options.notNullPrimitives && zero != null ? " NOT NULL DEFAULT " + zero : "";
+    }
+
+    /**
+     * Generates class method returning CREATE INDEX statements of indexes marked on properties.
+     * Columns with the same index group form a composite index in the order of properties.
+     * @return
+     */
+    public String generateCreateIndexesMethod(){
+        final Map<String, List<DbColumn>> groups = new LinkedHashMap<String, List<DbColumn>>();
+        for (DbColumn col : columns) {
+            if (col.indexGroup == null){
+                continue;
+            }
+
+            List<DbColumn> group = groups.get(col.indexGroup);
+            if (group == null){
+                group = new ArrayList<DbColumn>();
+                groups.put(col.indexGroup, group);
+            }
+
+            group.add(col);
+        }
+
+        StringBuilder builder = new StringBuilder("+ (NSArray *)getCreateIndexes {\n" +
+                "    NSMutableArray *indexes = [[NSMutableArray alloc] init];\n");
+        for (Map.Entry<String, List<DbColumn>> entry : groups.entrySet()) {
+            boolean unique = false;
+            StringBuilder placeholders = new StringBuilder();
+            StringBuilder vars = new StringBuilder();
+            for (DbColumn col : entry.getValue()) {
+                unique |= col.unique;
+                placeholders.append(placeholders.length() == 0 ? "%@" : ", %@");
+                vars.append(", ").append(col.fieldName);
+            }
+
+            builder.append("    [indexes addObject:[NSString stringWithFormat:@\"CREATE ")
+                    .append(unique ? "UNIQUE " : "")
+                    .append("INDEX IF NOT EXISTS ").append(DbColumn.toIndexName(schema.prefix, entry.getKey()))
+                    .append(" ON %@ (").append(placeholders).append(")\", ")
+                    .append(schema.getTableNameField()).append(vars).append("]];\n");
+        }
+
+        builder.append("    return indexes;\n" +
+                "}");
+        return builder.toString();
+    }
+
+    public String generateCreateFromCursorMethod() {
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Create wrapper with content values pairs.\n" +
+                "*\n" +
+                "* @param args the content value to unpack.\n" +
+                "*/\n" +
+                "-(void) createFromCursor: (PEXDbCursor *) c {\n" +
+                "    int colCount = [c getColumnCount];\n" +
+                "    for(int i=0; i<colCount; i++) {\n" +
+                "        NSString *colname = [c getColumnName:i];\n");
+
+        int cnEntries = 0;
+        for (DbColumn col : columns) {
+            if (cnEntries == 0){
+                builder.append("if ");
+            } else {
+                builder.append(" else if ");
+            }
+
+            String method = getMethodForType(col);
+            builder.append(" ([" + col.fieldName + " isEqualToString: colname]){\n");
+            builder.append(" _"+col.name+" = "+method+"\n");
+            builder.append("}");
+
+            cnEntries +=1 ;
+        }
+        if (cnEntries > 0){
+            builder.append(" else {\n" +
+                    "            DDLogWarn(@\"Unknown column name %@\", colname);\n" +
+                    "        }");
+        }
+
+        builder.append("    }\n" +
+                "}");
+        return builder.toString();
+    }
+
+    public String getMethodForType(DbColumn col) {
+        return getMethodForType(col, "i");
+    }
+
+    /**
+     * Returns cursor getter statement for the column.
+     * @param col
+     * @param idx expression with the column index in the cursor.
+     * @return
+     */
+    public String getMethodForType(DbColumn col, String idx) {
+        // Special case - identifier.
+        if ("id".equalsIgnoreCase(col.name) && "NSNumber *".equalsIgnoreCase(col.typeName)){
+            return "[c getInt64:"+idx+"];";
+        }
+
+        final TypeMapping mapping = typeRegistry.get(col);
+        if (mapping == null){
+            return "[c getString:"+idx+"]; //TODO:verify, type=" + col.typeName;
+        }
+
+        return mapping.getterFor(idx) + ";";
+    }
+
+    /**
+     * Name of the generated struct holding cursor column indexes.
+     * @return
+     */
+    public String getColumnsStructName(){
+        return schema.className + "Columns";
+    }
+
+    /**
+     * Generates typedef of a struct holding cursor index of each column, -1 if not present.
+     * @return
+     */
+    public String generateColumnsStruct(){
+        final String structName = getColumnsStructName();
+        StringBuilder builder = new StringBuilder("typedef struct " + structName + " {\n");
+        for (DbColumn col : columns) {
+            builder.append("    int ").append(col.name).append(";\n");
+        }
+
+        builder.append("} ").append(structName).append(";\n");
+        return builder.toString();
+    }
+
+    /**
+     * Generates binding of cursor column names to indexes, string comparison is done once per cursor.
+     * @return
+     */
+    public String generateBindCursorColumnsMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Binds cursor columns to indexes, call once per cursor.\n" +
+                "*\n" +
+                "* @param c the cursor to bind.\n" +
+                "* @param cols the column indexes to fill, -1 if column is missing.\n" +
+                "*/\n" +
+                "+(void) bindCursorColumns: (PEXDbCursor *) c columns: ("+getColumnsStructName()+" *) cols {\n");
+        for (DbColumn col : columns) {
+            builder.append("    cols->").append(col.name).append(" = -1;\n");
+        }
+
+        builder.append("    int colCount = [c getColumnCount];\n" +
+                "    for(int i=0; i<colCount; i++) {\n" +
+                "        NSString *colname = [c getColumnName:i];\n");
+
+        int cnEntries = 0;
+        for (DbColumn col : columns) {
+            if (cnEntries == 0){
+                builder.append("if ");
+            } else {
+                builder.append(" else if ");
+            }
+
+            builder.append(" ([" + col.fieldName + " isEqualToString: colname]){\n");
+            builder.append(" cols->"+col.name+" = i;\n");
+            builder.append("}");
+
+            cnEntries +=1 ;
+        }
+        if (cnEntries > 0){
+            builder.append(" else {\n" +
+                    "            DDLogWarn(@\"Unknown column name %@\", colname);\n" +
+                    "        }");
+        }
+
+        builder.append("    }\n" +
+                "}");
+        return builder.toString();
+    }
+
+    /**
+     * Generates per-row decode using column indexes bound by bindCursorColumns, no string comparison.
+     * @return
+     */
+    public String generateCreateFromCursorIndexedMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Create wrapper from the current cursor row using bound column indexes.\n" +
+                "*\n" +
+                "* @param c the cursor to unpack.\n" +
+                "* @param cols column indexes bound by bindCursorColumns.\n" +
+                "*/\n" +
+                "-(void) createFromCursor: (PEXDbCursor *) c columns: (const "+getColumnsStructName()+" *) cols {\n");
+        for (DbColumn col : columns) {
+            final String idx = "cols->" + col.name;
+            builder.append("    if (").append(idx).append(" >= 0) _").append(col.name).append(" = ").append(getMethodForType(col, idx)).append("\n");
+        }
+
+        builder.append("}");
+        return builder.toString();
+    }
+
+    /**
+     * Generates class method loading all cursor rows to a presized array.
+     * Columns are bound once, rows are decoded by createFromCursor:columns:
+     * @return
+     */
+    public String generateLoadAllFromCursorMethod(){
+        final String clsName = schema.className;
+        return "/**\n" +
+                "* Loads all remaining rows of the cursor.\n" +
+                "*\n" +
+                "* @param c the cursor to read.\n" +
+                "* @return array of loaded objects.\n" +
+                "*/\n" +
+                "+(NSMutableArray *) loadAllFromCursor: (PEXDbCursor *) c {\n" +
+                "    NSMutableArray * result = [[NSMutableArray alloc] initWithCapacity:[c getCount]];\n" +
+                "    "+getColumnsStructName()+" cols;\n" +
+                "    [self bindCursorColumns:c columns:&cols];\n" +
+                "    while([c moveToNext]){\n" +
+                "        "+clsName+" * obj = [[self alloc] init];\n" +
+                "        [obj createFromCursor:c columns:&cols];\n" +
+                "        [result addObject:obj];\n" +
+                "    }\n" +
+                "\n" +
+                "    return result;\n" +
+                "}";
+    }
+
+    /**
+     * Generates createFromCursor: binding the columns and decoding the row by index.
+     * @return
+     */
+    public String generateCreateFromCursorBindingMethod(){
+        final String structName = getColumnsStructName();
+        return "/**\n" +
+                "* Create wrapper with content values pairs.\n" +
+                "* When reading more rows, bind columns once with bindCursorColumns and use createFromCursor:columns:\n" +
+                "*\n" +
+                "* @param c the cursor to unpack.\n" +
+                "*/\n" +
+                "-(void) createFromCursor: (PEXDbCursor *) c {\n" +
+                "    "+structName+" cols;\n" +
+                "    [[self class] bindCursorColumns:c columns:&cols];\n" +
+                "    [self createFromCursor:c columns:&cols];\n" +
+                "}";
+    }
+
+    public String generateGetDbContentValuesMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Pack the object content value to store\n" +
+                "*\n" +
+                "* @return The content value representing the message\n" +
+                "*/\n" +
+                "-(PEXDbContentValues *) getDbContentValues {\n" +
+                getInvalidateCachedStatement() +
+                "    PEXDbContentValues * cv = [[PEXDbContentValues alloc] init];\n");
+
+        int cnEntries = 0;
+        for (DbColumn col : columns) {
+            final String name = col.name;
+            final String fieldName = col.fieldName;
+
+            // Special case - identifier.
+            if ("id".equalsIgnoreCase(name)) {
+                builder.append("if (_id != nil && [_id longLongValue] != -1ll) {\n" +
+                        "    [cv put: "+fieldName+" NSNumberAsLongLong: _id];\n" +
+                        "}\n");
+                continue;
+            }
+
+            String method = getPutMethodForType(col);
+            builder.append("if (_"+name+" != nil)\n" +
+                    "    [cv  put: "+fieldName+" "+(method == null ? " string " : method)+" : _"+name+" ]; ");
+            if (method == null){
+                builder.append(" // TODO:verify type: ").append(col.typeName);
+            }
+
+            builder.append("\n");
+            cnEntries +=1 ;
+        }
+
+        builder.append("\nreturn cv; \n}\n");
+        return builder.toString();
+    }
+
+    public String getPutMethodForType(DbColumn col) {
+        final TypeMapping mapping = typeRegistry.get(col);
+        return mapping == null ? null : mapping.putter;
+    }
+
+    /**
+     * Columns written by insert, in the order of statement parameters.
+     * Identifier is left out only as a rowid alias, assigned by the DB.
+     * @return
+     */
+    public List<DbColumn> getInsertColumns(){
+        final DbColumn rowidColumn = isRowidAlias() ? getIdColumn() : null;
+        final List<DbColumn> insertColumns = new ArrayList<DbColumn>();
+        for (DbColumn col : columns) {
+            if (col != rowidColumn){
+                insertColumns.add(col);
+            }
+        }
+
+        return insertColumns;
+    }
+
+    /**
+     * Generates class method returning INSERT statement with ? placeholders, built only once.
+     * @return
+     */
+    public String generateInsertStatementMethod(){
+        final List<DbColumn> insertColumns = getInsertColumns();
+        StringBuilder names = new StringBuilder();
+        StringBuilder params = new StringBuilder();
+        StringBuilder vars = new StringBuilder(schema.getTableNameField());
+        for (DbColumn col : insertColumns) {
+            names.append(names.length() == 0 ? "%@" : ", %@");
+            params.append(params.length() == 0 ? "?" : ", ?");
+            vars.append(", ").append(col.fieldName);
+        }
+
+        return "/**\n" +
+                "* Insert statement with parameters in the order bound by bindToStatement:.\n" +
+                "*/\n" +
+                "+ (NSString *)getInsertStatement {\n" +
+                "    static NSString *insertStatement = nil;\n" +
+                "    static dispatch_once_t onceToken;\n" +
+                "    dispatch_once(&onceToken, ^{\n" +
+                "        insertStatement = [[NSString alloc] initWithFormat:@\"INSERT INTO %@ (" + names + ") VALUES (" + params + ")\",\n" +
+                "                " + vars + "];\n" +
+                "    });\n" +
+                "    return insertStatement;\n" +
+                "}";
+    }
+
+    /**
+     * Generates method binding properties to the statement prepared from getInsertStatement.
+     * @return
+     */
+    public String generateBindToStatementMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Binds properties to the statement prepared from getInsertStatement, nil properties are bound as NULL.\n" +
+                "*\n" +
+                "* @param stmt prepared insert statement, reset by the caller.\n" +
+                "*/\n" +
+                "- (void)bindToStatement:(struct sqlite3_stmt *)stmt {\n" +
+                getInvalidateCachedStatement());
+
+        int idx = 0;
+        for (DbColumn col : getInsertColumns()) {
+            idx += 1;
+            final String value = "_" + col.name;
+            final TypeMapping mapping = typeRegistry.get(col);
+            final String binder = mapping == null ? null : mapping.binderFor("stmt", String.valueOf(idx), value);
+            if (binder == null){
+                builder.append("    sqlite3_bind_null(stmt, ").append(idx).append("); // TODO:verify type: ").append(col.typeName).append("\n");
+            } else if (isPointerType(col)){
+                builder.append("    if (").append(value).append(" != nil) {\n")
+                        .append("        ").append(binder).append(";\n")
+                        .append("    } else {\n")
+                        .append("        sqlite3_bind_null(stmt, ").append(idx).append(");\n")
+                        .append("    }\n");
+            } else {
+                builder.append("    ").append(binder).append(";\n");
+            }
+        }
+
+        builder.append("}");
+        return builder.toString();
+    }
+
+    /**
+     * Generates class method inserting an array of models with a single prepared statement.
+     * Rows are committed in transactions of BATCH_CHUNK_SIZE rows to bound memory and journal size.
+     * @return
+     */
+    public String generateInsertBatchMethod(){
+        return "/**\n" +
+                "* Inserts models reusing a single prepared statement, in transactions of at most " + BATCH_CHUNK_SIZE + " rows.\n" +
+                "* On error the current transaction is rolled back, previous ones stay committed.\n" +
+                "*\n" +
+                "* @param models models to insert.\n" +
+                "* @param db open database handle.\n" +
+                "* @return number of committed rows, less than models count on error.\n" +
+                "*/\n" +
+                "+ (NSUInteger)insertBatch:(NSArray *)models intoDatabase:(struct sqlite3 *)db {\n" +
+                "    const NSUInteger chunkSize = " + BATCH_CHUNK_SIZE + ";\n" +
+                "    const NSUInteger count = [models count];\n" +
+                "    NSUInteger inserted = 0;\n" +
+                "    if (count == 0) {\n" +
+                "        return 0;\n" +
+                "    }\n" +
+                "\n" +
+                "    sqlite3_stmt *stmt = NULL;\n" +
+                "    if (sqlite3_prepare_v2(db, [[self getInsertStatement] UTF8String], -1, &stmt, NULL) != SQLITE_OK) {\n" +
+                "        DDLogError(@\"Cannot prepare insert into %@: %s\", " + schema.getTableNameField() + ", sqlite3_errmsg(db));\n" +
+                "        return 0;\n" +
+                "    }\n" +
+                "\n" +
+                "    for (NSUInteger start = 0; start < count; start += chunkSize) {\n" +
+                "        @autoreleasepool {\n" +
+                "            const NSUInteger end = MIN(start + chunkSize, count);\n" +
+                "            BOOL success = sqlite3_exec(db, \"BEGIN IMMEDIATE TRANSACTION\", NULL, NULL, NULL) == SQLITE_OK;\n" +
+                "            for (NSUInteger i = start; success && i < end; i++) {\n" +
+                "                " + schema.className + " *model = models[i];\n" +
+                "                [model bindToStatement:stmt];\n" +
+                "                success = sqlite3_step(stmt) == SQLITE_DONE;\n" +
+                "                sqlite3_reset(stmt);\n" +
+                "                sqlite3_clear_bindings(stmt);\n" +
+                "            }\n" +
+                "\n" +
+                "            if (success) {\n" +
+                "                success = sqlite3_exec(db, \"COMMIT TRANSACTION\", NULL, NULL, NULL) == SQLITE_OK;\n" +
+                "            }\n" +
+                "\n" +
+                "            if (!success) {\n" +
+                "                DDLogError(@\"Batch insert into %@ failed: %s\", " + schema.getTableNameField() + ", sqlite3_errmsg(db));\n" +
+                "                sqlite3_exec(db, \"ROLLBACK TRANSACTION\", NULL, NULL, NULL);\n" +
+                "                break;\n" +
+                "            }\n" +
+                "\n" +
+                "            inserted = end;\n" +
+                "        }\n" +
+                "    }\n" +
+                "\n" +
+                "    sqlite3_finalize(stmt);\n" +
+                "    return inserted;\n" +
+                "}";
+    }
+
+    /**
+     * Named sub-projections from the options. Projection with an unknown property is skipped entirely,
+     * so a typo never shifts the columns its loader decodes.
+     * @return projection columns by projection name, in the order given.
+     */
+    public Map<String, List<DbColumn>> getProjections(){
+        final Map<String, List<DbColumn>> projections = new LinkedHashMap<String, List<DbColumn>>();
+        final List<String> errors = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> entry : parseProjections(options.projections, errors).entrySet()) {
+            final List<DbColumn> projColumns = new ArrayList<DbColumn>();
+            for (String colName : entry.getValue()) {
+                final DbColumn col = getColumn(colName);
+                if (col == null){
+                    errors.add(unknownProjectionProperty(entry.getKey(), colName));
+                    break;
+                }
+
+                projColumns.add(col);
+            }
+
+            if (projColumns.size() == entry.getValue().size()){
+                projections.put(entry.getKey(), projColumns);
+            }
+        }
+
+        for (String error : errors) {
+            LOG.warn(error + ", projection skipped");
+        }
+
+        return projections;
+    }
+
+    /**
+     * Validates projections option against names of the model properties.
+     * @param spec projections option, e.g., "list: title, date; detail: title, body".
+     * @param propertyNames
+     * @return error messages, empty if valid.
+     */
+    public static List<String> validateProjections(String spec, Collection<String> propertyNames){
+        final List<String> errors = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> entry : parseProjections(spec, errors).entrySet()) {
+            for (String colName : entry.getValue()) {
+                if (!propertyNames.contains(colName)){
+                    errors.add(unknownProjectionProperty(entry.getKey(), colName));
+                }
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Parses projections option to property names by projection name, malformed projections are reported and skipped.
+     * @param spec
+     * @param errors receives error messages.
+     * @return
+     */
+    static Map<String, List<String>> parseProjections(String spec, List<String> errors){
+        final Map<String, List<String>> projections = new LinkedHashMap<String, List<String>>();
+        if (StringUtil.isEmptyOrSpaces(spec)){
+            return projections;
+        }
+
+        for (String projection : spec.split(";")) {
+            if (StringUtil.isEmptyOrSpaces(projection)){
+                continue;
+            }
+
+            final int colon = projection.indexOf(':');
+            final String name = colon < 0 ? "" : projection.substring(0, colon).trim();
+            if (!name.matches("\\w+")){
+                errors.add("Invalid projection, name: property, property expected: " + projection.trim());
+                continue;
+            }
+
+            if (projections.containsKey(name)){
+                errors.add("Duplicate projection " + name);
+                continue;
+            }
+
+            final List<String> colNames = new ArrayList<String>();
+            final Set<String> seen = new HashSet<String>();
+            for (String colName : projection.substring(colon + 1).split(",")) {
+                final String trimmed = colName.trim();
+                if (!trimmed.isEmpty() && seen.add(trimmed)){
+                    colNames.add(trimmed);
+                }
+            }
+
+            if (colNames.isEmpty()){
+                errors.add("Projection " + name + " has no properties");
+                continue;
+            }
+
+            projections.put(name, colNames);
+        }
+
+        return projections;
+    }
+
+    private static String unknownProjectionProperty(String projection, String property){
+        return String.format("Unknown property %s in projection %s", property, projection);
+    }
+
+    private DbColumn getColumn(String name){
+        for (DbColumn col : columns) {
+            if (col.name.equals(name)){
+                return col;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Generates class method returning all columns in the order of properties.
+     * @return
+     */
+    public String generateFullProjectionMethod(){
+        return generateProjectionArray("getFullProjection", "All table columns, in the order of properties.", columns);
+    }
+
+    /**
+     * Generates class method returning columns of the named projection.
+     * @param name
+     * @param projColumns
+     * @return
+     */
+    public GeneratedMethod generateProjectionMethod(String name, List<DbColumn> projColumns){
+        final String selector = "get" + StringUtil.capitalize(name) + "Projection";
+        return new GeneratedMethod(selector, "+ (NSArray *)" + selector + ";\n",
+                generateProjectionArray(selector, "Columns of the " + name + " projection, decoded by createFrom"
+                        + StringUtil.capitalize(name) + "ProjectionCursor:", projColumns));
+    }
+
+    private String generateProjectionArray(String selector, String doc, List<DbColumn> projColumns){
+        StringBuilder fields = new StringBuilder();
+        for (DbColumn col : projColumns) {
+            fields.append(fields.length() == 0 ? "" : ", ").append(col.fieldName);
+        }
+
+        return "/**\n" +
+                "* " + doc + "\n" +
+                "*/\n" +
+                "+ (NSArray *)" + selector + " {\n" +
+                "    static NSArray *projection = nil;\n" +
+                "    static dispatch_once_t onceToken;\n" +
+                "    dispatch_once(&onceToken, ^{\n" +
+                "        projection = @[" + fields + "];\n" +
+                "    });\n" +
+                "    return projection;\n" +
+                "}";
+    }
+
+    /**
+     * Generates loader of the named projection, cursor columns are expected in the projection order,
+     * so they are decoded by index without column name lookup.
+     * @param name
+     * @param projColumns
+     * @return
+     */
+    public GeneratedMethod generateProjectionLoaderMethod(String name, List<DbColumn> projColumns){
+        final String selector = "createFrom" + StringUtil.capitalize(name) + "ProjectionCursor:";
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Create wrapper from the current cursor row queried with get" + StringUtil.capitalize(name) + "Projection.\n" +
+                "* Other properties are left untouched.\n" +
+                "*\n" +
+                "* @param c the cursor to unpack, columns in the projection order.\n" +
+                "*/\n" +
+                "- (void)" + selector + "(PEXDbCursor *)c {\n");
+        for (int i = 0; i < projColumns.size(); i++) {
+            final DbColumn col = projColumns.get(i);
+            builder.append("    _").append(col.name).append(" = ").append(getMethodForType(col, String.valueOf(i))).append("\n");
+        }
+
+        builder.append("}");
+        return new GeneratedMethod(selector, "- (void)" + selector + "(PEXDbCursor *)c;\n", builder.toString());
+    }
+
+    /**
+     * Columns tracked by the dirty bitset, bit index is the position in the list.
+     * Rowid alias identifier and columns whose setter cannot be generated are not tracked.
+     * @return
+     */
+    public List<DbColumn> getDirtyColumns(){
+        final DbColumn rowidColumn = isRowidAlias() ? getIdColumn() : null;
+        final List<DbColumn> dirtyColumns = new ArrayList<DbColumn>();
+        for (DbColumn col : columns) {
+            if (col != rowidColumn && col.setterOverridable){
+                dirtyColumns.add(col);
+            }
+        }
+
+        return dirtyColumns;
+    }
+
+    /**
+     * Columns without generated setter, e.g., readonly, atomic or with hand written setter.
+     * Their changes cannot be tracked, so they are always packed to dirty content values.
+     * @return
+     */
+    public List<DbColumn> getUntrackedColumns(){
+        final DbColumn rowidColumn = isRowidAlias() ? getIdColumn() : null;
+        final List<DbColumn> untrackedColumns = new ArrayList<DbColumn>();
+        for (DbColumn col : columns) {
+            if (col != rowidColumn && !col.setterOverridable){
+                untrackedColumns.add(col);
+            }
+        }
+
+        return untrackedColumns;
+    }
+
+    private static String dirtyWord(int bit){
+        return DIRTY_IVAR + "[" + (bit / 64) + "]";
+    }
+
+    private static String dirtyMask(int bit){
+        return "(1ull << " + (bit % 64) + ")";
+    }
+
+    /**
+     * Generates class extension with the dirty columns bitset, one bit per tracked column.
+     * @return
+     */
+    public String generateDirtyExtension(){
+        final int words = Math.max(1, (getDirtyColumns().size() + 63) / 64);
+        return "@interface " + schema.className + " () {\n" +
+                "    uint64_t " + DIRTY_IVAR + "[" + words + "];\n" +
+                "}\n" +
+                "@end";
+    }
+
+    /**
+     * Generates setters marking the column dirty. Declared by the properties, so no declaration is generated.
+     * @return
+     */
+    public List<GeneratedMethod> generateDirtySetters(){
+        final List<GeneratedMethod> setters = new ArrayList<GeneratedMethod>();
+        final List<DbColumn> dirtyColumns = getDirtyColumns();
+        for (int bit = 0; bit < dirtyColumns.size(); bit++) {
+            final DbColumn col = dirtyColumns.get(bit);
+            final String selector = "set" + StringUtil.capitalize(col.name) + ":";
+            setters.add(new GeneratedMethod(selector, null,
+                    "- (void)" + selector + "(" + col.declaredType + ")" + col.name + " {\n" +
+                    "    " + col.ivarName + " = " + (col.copy ? "[" + col.name + " copy]" : col.name) + ";\n" +
+                    "    " + dirtyWord(bit) + " |= " + dirtyMask(bit) + ";\n" +
+                    "}"));
+        }
+
+        return setters;
+    }
+
+    /**
+     * Generates content values with changed columns and untracked columns.
+     * Nil values are stored as NULL if PEXDbContentValues has putNull:, skipped as in getDbContentValues otherwise.
+     * @return
+     */
+    public GeneratedMethod generateGetDirtyContentValuesMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Pack columns changed since the last clearDirty, for UPDATE of the changed columns only.\n" +
+                "*\n" +
+                "* @return content values of the changed columns.\n" +
+                "*/\n" +
+                "- (PEXDbContentValues *)getDirtyContentValues {\n" +
+                getInvalidateCachedStatement() +
+                "    PEXDbContentValues *cv = [[PEXDbContentValues alloc] init];\n");
+
+        final List<DbColumn> dirtyColumns = getDirtyColumns();
+        for (int bit = 0; bit < dirtyColumns.size(); bit++) {
+            final DbColumn col = dirtyColumns.get(bit);
+            builder.append("    if (").append(dirtyWord(bit)).append(" & ").append(dirtyMask(bit)).append(") {\n");
+            appendDirtyPut(builder, col, "        ");
+            builder.append("    }\n");
+        }
+
+        final List<DbColumn> untrackedColumns = getUntrackedColumns();
+        if (!untrackedColumns.isEmpty()){
+            builder.append("\n    // Changes of columns without generated setter are not tracked.\n");
+        }
+
+        for (DbColumn col : untrackedColumns) {
+            appendDirtyPut(builder, col, "    ");
+        }
+
+        builder.append("    return cv;\n" +
+                "}");
+        return new GeneratedMethod("getDirtyContentValues", "- (PEXDbContentValues *)getDirtyContentValues;\n", builder.toString());
+    }
+
+    private void appendDirtyPut(StringBuilder builder, DbColumn col, String indent){
+        final String method = getPutMethodForType(col);
+        final String put = "[cv put:" + col.fieldName + " " + (method == null ? "string" : method) + ":" + col.ivarName + "];";
+        if (!isPointerType(col)){
+            builder.append(indent).append(put).append("\n");
+            return;
+        }
+
+        builder.append(indent).append("if (").append(col.ivarName).append(" != nil) {\n")
+                .append(indent).append("    ").append(put).append("\n");
+        if (typeRegistry.isPutNullSupported()){
+            builder.append(indent).append("} else {\n")
+                    .append(indent).append("    [cv putNull:").append(col.fieldName).append("];\n");
+        }
+
+        builder.append(indent).append("}\n");
+    }
+
+    public GeneratedMethod generateIsDirtyMethod(){
+        final int words = Math.max(1, (getDirtyColumns().size() + 63) / 64);
+        StringBuilder builder = new StringBuilder("- (BOOL)isDirty {\n" +
+                "    return ");
+        for (int i = 0; i < words; i++) {
+            builder.append(i == 0 ? "" : " || ").append(DIRTY_IVAR).append("[").append(i).append("] != 0");
+        }
+
+        builder.append(";\n" +
+                "}");
+        return new GeneratedMethod("isDirty", "- (BOOL)isDirty;\n", builder.toString());
+    }
+
+    /**
+     * Generates method clearing the dirty bitset, to be called after the changes were committed.
+     * @return
+     */
+    public GeneratedMethod generateClearDirtyMethod(){
+        return new GeneratedMethod("clearDirty", "- (void)clearDirty;\n", "/**\n" +
+                "* Marks all columns clean, call after the changes were committed.\n" +
+                "*/\n" +
+                "- (void)clearDirty {\n" +
+                "    memset(" + DIRTY_IVAR + ", 0, sizeof(" + DIRTY_IVAR + "));\n" +
+                "}");
+    }
+
+    /**
+     * Returns the NSNumber id column the identity map is keyed on, null if identity cache is off or the model has none.
+     * @return
+     */
+    public DbColumn getIdentityCacheColumn(){
+        if (!options.identityCache){
+            return null;
+        }
+
+        final DbColumn idCol = getIdColumn();
+        return idCol != null && "NSNumber *".equalsIgnoreCase(idCol.typeName) ? idCol : null;
+    }
+
+    /**
+     * Statement evicting this object from the identity map, prepended to the generated save paths.
+     * @return statement with indentation and new line, empty if identity cache is not generated.
+     */
+    private String getInvalidateCachedStatement(){
+        return getIdentityCacheColumn() == null ? "" : "    [[self class] invalidateCachedId:" + getIdentityCacheColumn().ivarName + "];\n";
+    }
+
+    /**
+     * Generates NSCache identity map by id with a cost limit, loadById:, invalidation and delete by id.
+     * Objects are evicted when saved through getDbContentValues, getDirtyContentValues or bindToStatement:, and on deleteById:fromDatabase:.
+     * @return
+     */
+    public List<GeneratedMethod> generateIdentityCacheMethods(){
+        final List<GeneratedMethod> methods = new ArrayList<GeneratedMethod>();
+        final DbColumn idCol = getIdentityCacheColumn();
+        if (idCol == null){
+            LOG.warn("Identity cache needs NSNumber id property, not generated for " + schema.className);
+            return methods;
+        }
+
+        final String clsName = schema.className;
+        methods.add(new GeneratedMethod("identityCache", "+ (NSCache *)identityCache;\n", "/**\n" +
+                "* Identity map of loaded objects by id, objects of total identityCacheCost up to " + options.identityCacheCostLimit + " bytes are kept.\n" +
+                "*/\n" +
+                "+ (NSCache *)identityCache {\n" +
+                "    static NSCache *cache = nil;\n" +
+                "    static dispatch_once_t onceToken;\n" +
+                "    dispatch_once(&onceToken, ^{\n" +
+                "        cache = [[NSCache alloc] init];\n" +
+                "        cache.name = @\"" + clsName + "\";\n" +
+                "        cache.totalCostLimit = " + options.identityCacheCostLimit + ";\n" +
+                "    });\n" +
+                "    return cache;\n" +
+                "}"));
+
+        methods.add(generateIdentityCacheCostMethod());
+
+        final String providerType = "PEXDbCursor * (^)(NSString *selection, NSArray *selectionArgs)";
+        final String setProviderDecl = "+ (void)setCursorProvider:(" + providerType + ")cursorProvider";
+        methods.add(new GeneratedMethod("setCursorProvider:", setProviderDecl + ";\n", "/**\n" +
+                "* Sets the block loadById: queries the table with, typically at database open.\n" +
+                "*\n" +
+                "* @param cursorProvider queries the table with the given selection and arguments, returned cursor is closed by loadById:.\n" +
+                "*/\n" +
+                setProviderDecl + " {\n" +
+                "    objc_setAssociatedObject(self, @selector(loadById:), cursorProvider, OBJC_ASSOCIATION_COPY);\n" +
+                "}"));
+
+        final String loadDecl = "+ (" + clsName + " *)loadById:(NSNumber *)objId";
+        methods.add(new GeneratedMethod("loadById:", loadDecl + ";\n", "/**\n" +
+                "* Returns object with the given id, from the identity map if present, loaded otherwise.\n" +
+                "* Returned object is shared with other callers, copy it before changes that are not saved.\n" +
+                "*\n" +
+                "* @param objId id of the object.\n" +
+                "* @return object or nil if not found or no cursor provider is set.\n" +
+                "*/\n" +
+                loadDecl + " {\n" +
+                "    if (objId == nil) {\n" +
+                "        return nil;\n" +
+                "    }\n" +
+                "\n" +
+                "    NSCache *cache = [self identityCache];\n" +
+                "    " + clsName + " *obj = [cache objectForKey:objId];\n" +
+                "    if (obj != nil) {\n" +
+                "        return obj;\n" +
+                "    }\n" +
+                "\n" +
+                "    " + providerType.replace("(^)", "(^cursorProvider)") + " = objc_getAssociatedObject(self, @selector(loadById:));\n" +
+                "    PEXDbCursor *c = cursorProvider == nil ? nil : cursorProvider([NSString stringWithFormat:@\"%@=?\", " + idCol.fieldName + "], @[objId]);\n" +
+                "    if (c == nil) {\n" +
+                "        return nil;\n" +
+                "    }\n" +
+                "\n" +
+                "    if (![c moveToNext]) {\n" +
+                "        [c close];\n" +
+                "        return nil;\n" +
+                "    }\n" +
+                "\n" +
+                "    obj = [[" + clsName + " alloc] init];\n" +
+                "    [obj createFromCursor:c];\n" +
+                "    [c close];\n" +
+                "    [cache setObject:obj forKey:objId cost:[obj identityCacheCost]];\n" +
+                "    return obj;\n" +
+                "}"));
+
+        methods.add(new GeneratedMethod("isCachedInstance:", "+ (BOOL)isCachedInstance:(" + clsName + " *)obj;\n", "/**\n" +
+                "* Returns YES if the object is the instance held by the identity map, such instance must not be reset or refilled.\n" +
+                "*/\n" +
+                "+ (BOOL)isCachedInstance:(" + clsName + " *)obj {\n" +
+                "    return obj != nil && obj->" + idCol.ivarName + " != nil && [[self identityCache] objectForKey:obj->" + idCol.ivarName + "] == obj;\n" +
+                "}"));
+
+        methods.add(new GeneratedMethod("invalidateCachedId:", "+ (void)invalidateCachedId:(NSNumber *)objId;\n", "/**\n" +
+                "* Removes the object from the identity map, called by the generated save and delete paths.\n" +
+                "*/\n" +
+                "+ (void)invalidateCachedId:(NSNumber *)objId {\n" +
+                "    if (objId != nil) {\n" +
+                "        [[self identityCache] removeObjectForKey:objId];\n" +
+                "    }\n" +
+                "}"));
+
+        methods.add(new GeneratedMethod("clearIdentityCache", "+ (void)clearIdentityCache;\n", "/**\n" +
+                "* Empties the identity map, call after bulk updates or deletes.\n" +
+                "*/\n" +
+                "+ (void)clearIdentityCache {\n" +
+                "    [[self identityCache] removeAllObjects];\n" +
+                "}"));
+
+        final String deleteDecl = "+ (BOOL)deleteById:(NSNumber *)objId fromDatabase:(struct sqlite3 *)db";
+        methods.add(new GeneratedMethod("deleteById:fromDatabase:", deleteDecl + ";\n", "/**\n" +
+                "* Deletes the row with the given id and evicts the object from the identity map.\n" +
+                "*\n" +
+                "* @param objId id of the object.\n" +
+                "* @param db open database handle.\n" +
+                "* @return YES if the statement succeeded.\n" +
+                "*/\n" +
+                deleteDecl + " {\n" +
+                "    [self invalidateCachedId:objId];\n" +
+                "    if (objId == nil) {\n" +
+                "        return NO;\n" +
+                "    }\n" +
+                "\n" +
+                "    NSString *sql = [NSString stringWithFormat:@\"DELETE FROM %@ WHERE %@=?\", " + schema.getTableNameField() + ", " + idCol.fieldName + "];\n" +
+                "    sqlite3_stmt *stmt = NULL;\n" +
+                "    if (sqlite3_prepare_v2(db, [sql UTF8String], -1, &stmt, NULL) != SQLITE_OK) {\n" +
+                "        DDLogError(@\"Cannot prepare delete from %@: %s\", " + schema.getTableNameField() + ", sqlite3_errmsg(db));\n" +
+                "        return NO;\n" +
+                "    }\n" +
+                "\n" +
+                "    sqlite3_bind_int64(stmt, 1, [objId longLongValue]);\n" +
+                "    const BOOL success = sqlite3_step(stmt) == SQLITE_DONE;\n" +
+                "    sqlite3_finalize(stmt);\n" +
+                "    return success;\n" +
+                "}"));
+
+        return methods;
+    }
+
+    /**
+     * Generates estimate of the object memory in bytes, the NSCache cost of the identity map entry.
+     * Instance size plus bytes of string and data properties.
+     * @return
+     */
+    public GeneratedMethod generateIdentityCacheCostMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Estimated memory of the object in bytes, cost of its identity map entry.\n" +
+                "*/\n" +
+                "- (NSUInteger)identityCacheCost {\n" +
+                "    NSUInteger cost = class_getInstanceSize([self class]);\n");
+        for (DbColumn col : columns) {
+            final TypeMapping mapping = typeRegistry.get(col);
+            if (mapping != null && "string".equals(mapping.putter)){
+                builder.append("    cost += [").append(col.ivarName).append(" lengthOfBytesUsingEncoding:NSUTF8StringEncoding];\n");
+            } else if (TypeRegistry.isDataType(col.typeName)){
+                builder.append("    cost += [").append(col.ivarName).append(" length];\n");
+            }
+        }
+
+        builder.append("    return cost;\n" +
+                "}");
+        return new GeneratedMethod("identityCacheCost", "- (NSUInteger)identityCacheCost;\n", builder.toString());
+    }
+
+    public String getCursorEnumeratorName(){
+        return schema.className + "CursorEnumerator";
+    }
+
+    /**
+     * Generates interface of the cursor enumerator, private class in the implementation file.
+     * @return
+     */
+    public String generateCursorEnumeratorInterface(){
+        return "@interface " + getCursorEnumeratorName() + " : NSEnumerator\n" +
+                "- (instancetype)initWithCursor:(PEXDbCursor *)cursor reuse:(BOOL)reuse;\n" +
+                "@end";
+    }
+
+    /**
+     * Generates cursor enumerator decoding one row per nextObject.
+     * Fast enumeration is served one object at a time, so a reused instance is never buffered for more rows.
+     * Instance held by the identity map is never reset, a new one is allocated instead.
+     * @return
+     */
+    public String generateCursorEnumeratorImplementation(){
+        final String clsName = schema.className;
+        final boolean indexed = options.indexedCursor;
+        return "@implementation " + getCursorEnumeratorName() + " {\n" +
+                "    PEXDbCursor *_cursor;\n" +
+                "    BOOL _reuse;\n" +
+                "    " + clsName + " *_current;\n" +
+                (indexed ? "    " + getColumnsStructName() + " _cols;\n" : "") +
+                "}\n" +
+                "\n" +
+                "- (instancetype)initWithCursor:(PEXDbCursor *)cursor reuse:(BOOL)reuse {\n" +
+                "    self = [super init];\n" +
+                "    if (self) {\n" +
+                "        _cursor = cursor;\n" +
+                "        _reuse = reuse;\n" +
+                (indexed ? "        [" + clsName + " bindCursorColumns:cursor columns:&_cols];\n" : "") +
+                "    }\n" +
+                "\n" +
+                "    return self;\n" +
+                "}\n" +
+                "\n" +
+                "- (id)nextObject {\n" +
+                "    if (![_cursor moveToNext]) {\n" +
+                "        _current = nil;\n" +
+                "        return nil;\n" +
+                "    }\n" +
+                "\n" +
+                "    if (_reuse && _current != nil" + (getIdentityCacheColumn() == null ? "" : " && ![" + clsName + " isCachedInstance:_current]") + ") {\n" +
+                "        [_current resetForReuse];\n" +
+                "    } else {\n" +
+                "        _current = [[" + clsName + " alloc] init];\n" +
+                "    }\n" +
+                "\n" +
+                (indexed ? "    [_current createFromCursor:_cursor columns:&_cols];\n" : "    [_current createFromCursor:_cursor];\n") +
+                "    return _current;\n" +
+                "}\n" +
+                "\n" +
+                "- (NSUInteger)countByEnumeratingWithState:(NSFastEnumerationState *)state objects:(id __unsafe_unretained [])buffer count:(NSUInteger)len {\n" +
+                "    id obj = [self nextObject];\n" +
+                "    if (obj == nil) {\n" +
+                "        return 0;\n" +
+                "    }\n" +
+                "\n" +
+                "    buffer[0] = obj;\n" +
+                "    state->itemsPtr = buffer;\n" +
+                "    state->mutationsPtr = &state->extra[0];\n" +
+                "    return 1;\n" +
+                "}\n" +
+                "@end";
+    }
+
+    /**
+     * Generates resetForReuse clearing all column properties, so values of the previous row do not leak.
+     * @return
+     */
+    public GeneratedMethod generateResetForReuseMethod(){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Clears all column properties, called before the instance is refilled from the next row.\n" +
+                (getIdentityCacheColumn() == null ? "" : "* Never call on instances returned by loadById:, they are shared.\n") +
+                "*/\n" +
+                "- (void)resetForReuse {\n");
+        for (DbColumn col : columns) {
+            builder.append("    ").append(col.ivarName).append(" = ").append(isPointerType(col) ? "nil" : "0").append(";\n");
+        }
+
+        if (options.dirtyTracking){
+            builder.append("    [self clearDirty];\n");
+        }
+
+        return new GeneratedMethod("resetForReuse", "- (void)resetForReuse;\n", builder.append("}").toString());
+    }
+
+    public GeneratedMethod generateEnumeratorForCursorMethod(){
+        final String decl = "+ (NSEnumerator *)enumeratorForCursor:(PEXDbCursor *)c reuse:(BOOL)reuse";
+        return new GeneratedMethod("enumeratorForCursor:reuse:", decl + ";\n", "/**\n" +
+                "* Lazy enumerator over the remaining rows of the cursor, rows are decoded on demand.\n" +
+                "*\n" +
+                "* @param c the cursor to read.\n" +
+                "* @param reuse if YES, a single instance is refilled for every row, do not keep references to it.\n" +
+                "* @return enumerator, usable in for..in loops.\n" +
+                "*/\n" +
+                decl + " {\n" +
+                "    return [[" + getCursorEnumeratorName() + " alloc] initWithCursor:c reuse:reuse];\n" +
+                "}");
+    }
+
+    private static boolean isPointerType(DbColumn col){
+        return col.stringCompatible || (col.typeName != null && col.typeName.trim().endsWith("*"));
+    }
+
+    public String generateSchemaVersionMethod(SchemaSnapshot snapshot){
+        return "+ (int)getSchemaVersion {\n" +
+                "    return " + snapshot.version + ";\n" +
+                "}";
+    }
+
+    /**
+     * Generates class method returning ALTER TABLE statements upgrading the table from the given version.
+     * Columns get the same constraints as in CREATE TABLE, existing rows read the default without a table rewrite.
+     * @param snapshot
+     * @return
+     */
+    public String generateUpgradeStatementsMethod(SchemaSnapshot snapshot){
+        StringBuilder builder = new StringBuilder("/**\n" +
+                "* Statements upgrading the table from the given schema version to getSchemaVersion.\n" +
+                "*\n" +
+                "* @param oldVersion schema version of the existing table.\n" +
+                "*/\n" +
+                "+ (NSArray *)getUpgradeStatementsFrom:(int)oldVersion {\n" +
+                "    NSMutableArray *statements = [[NSMutableArray alloc] init];\n");
+
+        final String table = schema.getTableNameField();
+        for (int version = SchemaSnapshot.FIRST_VERSION + 1; version <= snapshot.version; version++) {
+            final List<SnapshotColumn> added = snapshot.getColumnsAddedIn(version);
+            if (added.isEmpty()){
+                continue;
+            }
+
+            builder.append("    if (oldVersion < ").append(version).append(") {\n");
+            for (SnapshotColumn col : added) {
+                // Constant of a removed property may not exist any more.
+                final String column = col.removed ? "@\"" + col.name + "\"" : col.fieldName;
+                builder.append("        [statements addObject:[NSString stringWithFormat:@\"ALTER TABLE %@ ADD COLUMN %@ ")
+                        .append(col.sqlType).append(getNotNullConstraint(col.isScalar(), col.sqlType))
+                        .append("\", ").append(table).append(", ").append(column).append("]];\n");
+            }
+
+            builder.append("    }\n");
+        }
+
+        builder.append("    return statements;\n" +
+                "}");
+        return builder.toString();
+    }
+
+    /**
+     * Returns zero default literal of the SQL type.
+     * @param sqlType
+     * @return literal or null if the type has no numeric affinity.
+     */
+    public static String getZeroDefault(String sqlType){
+        if ("INTEGER".equalsIgnoreCase(sqlType)){
+            return "0";
+        } else if ("REAL".equalsIgnoreCase(sqlType)){
+            return "0.0";
+        }
+
+        return null;
+    }
+}
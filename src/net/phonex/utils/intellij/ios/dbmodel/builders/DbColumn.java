@@ -0,0 +1,109 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import com.google.common.base.CaseFormat;
+
+/**
+ * Holder class for a single DB column resolved from a property declarator.
+ * Type and column name are resolved only once, generators work on this record.
+ */
+public class DbColumn {
+    public final String name;
+    public final String fieldName;
+    public final String typeName;
+    public final boolean stringCompatible;
+
+    /**
+     * Index the column is part of, column name for a single column index, null if not indexed.
+     */
+    public final String indexGroup;
+    public final boolean unique;
+
+    /**
+     * Property is declared with copy attribute, generated setters have to copy the value.
+     */
+    public final boolean copy;
+
+    /**
+     * Property is readwrite, nonatomic, without custom setter= and without hand written setter,
+     * so dirty tracking may generate its setter.
+     */
+    public final boolean setterOverridable;
+
+    /**
+     * Type as written in the property declaration, e.g., a typedef, used in generated setter signatures.
+     */
+    public final String declaredType;
+
+    /**
+     * Instance variable backing the property, _name unless @synthesize names another one.
+     */
+    public final String ivarName;
+
+    public DbColumn(String name, String fieldName, String typeName, boolean stringCompatible) {
+        this(name, fieldName, typeName, stringCompatible, null, false, false, true);
+    }
+
+    public DbColumn(String name, String fieldName, String typeName, boolean stringCompatible, String indexGroup, boolean unique,
+                    boolean copy, boolean setterOverridable) {
+        this(name, fieldName, typeName, stringCompatible, indexGroup, unique, copy, setterOverridable, typeName, "_" + name);
+    }
+
+    public DbColumn(String name, String fieldName, String typeName, boolean stringCompatible, String indexGroup, boolean unique,
+                    boolean copy, boolean setterOverridable, String declaredType, String ivarName) {
+        this.name = name;
+        this.fieldName = fieldName;
+        this.typeName = typeName;
+        this.stringCompatible = stringCompatible;
+        this.indexGroup = indexGroup;
+        this.unique = unique;
+        this.copy = copy;
+        this.setterOverridable = setterOverridable;
+        this.declaredType = declaredType;
+        this.ivarName = ivarName;
+    }
+
+    /**
+     * Name of the global constant holding column name, camel case is converted to snake case.
+     * @param prefix
+     * @param name
+     * @return
+     */
+    public static String toFieldName(String prefix, String name) {
+        return prefix + "_FIELD_" + CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
+    }
+
+    /**
+     * Name of the index, derived the same way as the column constants.
+     * @param prefix
+     * @param indexGroup
+     * @return
+     */
+    public static String toIndexName(String prefix, String indexGroup) {
+        return prefix + "_IDX_" + CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, indexGroup);
+    }
+
+    /**
+     * Signature of the column, changes if the column is renamed, retyped, its index, setter or ivar changes.
+     * @return
+     */
+    public String getSignature() {
+        return name + ':' + typeName + ':' + stringCompatible + ':' + indexGroup + ':' + unique + ':' + copy + ':' + setterOverridable
+                + ':' + declaredType + ':' + ivarName;
+    }
+
+    @Override
+    public String toString() {
+        return "DbColumn{" +
+                "name='" + name + '\'' +
+                ", fieldName='" + fieldName + '\'' +
+                ", typeName='" + typeName + '\'' +
+                ", stringCompatible=" + stringCompatible +
+                ", indexGroup='" + indexGroup + '\'' +
+                ", unique=" + unique +
+                ", copy=" + copy +
+                ", setterOverridable=" + setterOverridable +
+                ", declaredType='" + declaredType + '\'' +
+                ", ivarName='" + ivarName + '\'' +
+                '}';
+    }
+}
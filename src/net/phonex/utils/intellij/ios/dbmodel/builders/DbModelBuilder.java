@@ -1,31 +1,70 @@
 package net.phonex.utils.intellij.ios.dbmodel.builders;
 
-import com.google.common.base.CaseFormat;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiParserFacade;
 import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.jetbrains.cidr.lang.OCLanguage;
 import com.jetbrains.cidr.*;
 import com.jetbrains.cidr.lang.psi.*;
 import com.jetbrains.cidr.lang.types.OCType;
 import com.jetbrains.cidr.lang.util.OCElementFactory;
+import net.phonex.utils.intellij.ios.dbmodel.settings.DbModelSettings;
+import net.phonex.utils.intellij.ios.dbmodel.utilities.ClassPair;
 import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DbModelBuilder {
     private static final Logger LOG = Logger.getInstance(DbModelBuilder.class);
+    private static final Pattern LEADING_COMMENT = Pattern.compile("^\\s*/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern PROPERTY_ATTRIBUTES = Pattern.compile("^\\s*@property\\s*\\(([^)]*)\\)");
+    private static final Pattern CUSTOM_SETTER = Pattern.compile("\\bsetter\\s*=");
+    private static final Pattern SYNTHESIZE = Pattern.compile("@(synthesize|dynamic)\\s+([^;]+);");
+    private static final String SQLITE_HEADER = "<sqlite3.h>";
+    private static final String RUNTIME_HEADER = "<objc/runtime.h>";
+    private static final String CURSOR_CLASS = "PEXDbCursor";
+    private static final String CONTENT_VALUES_CLASS = "PEXDbContentValues";
+    private static final Pattern INDEX_MARKER = Pattern.compile("@db:(index|unique)(?:\\(\\s*(\\w+)\\s*\\))?");
 
     private String prefix;
+    private DbModelOptions options = new DbModelOptions();
+    private TypeRegistry typeRegistry;
     private PsiFile psiFile;
     private OCClassDeclaration ocClassDecl;
     private List<OCProperty> fields;
 
+    // Columns resolved from fields, types & names are resolved only once per context.
+    private List<DbColumn> columns;
+    private DbSchema schema;
+    private GeneratedModel generated;
+    private GenerationStats stats = new GenerationStats();
+
     CodeStyleManager codeStyleManager;
 
+    // If set, nothing is written, differences from the generated code are collected in drift.
+    private boolean checkOnly = false;
+    private final List<String> drift = new ArrayList<String>();
+
+    // If set, the stored schema snapshot is updated and its version bumped, only on explicit user action.
+    private boolean updateSchemaSnapshot = false;
+
+    // If set, existing methods are replaced by the generated ones instead of adding a new copy.
+    private boolean replaceExisting = true;
+
+    // If set, reformatting of inserted elements is deferred until flushReformat().
+    private boolean deferredReformat = false;
+    private ReformatBatch reformatBatch;
+
     // Class implementation & its containing file, regardless to the current selection.
     private OCImplementation clsImpl;
     private PsiFile fileImpl;
@@ -38,6 +77,8 @@ public class DbModelBuilder {
         this.psiFile = psiFile;
         this.ocClassDecl = classDecl;
         this.fields = fields;
+        this.stats = new GenerationStats(classDecl.getName());
+        this.generated = null;
         codeStyleManager = CodeStyleManager.getInstance(ocClassDecl.getProject());
 
         // Get class implementation & its containing file, regardless to the current selection.
@@ -55,208 +96,255 @@ public class DbModelBuilder {
         } catch(Exception e){
 
         }
+
+        // Columns are resolved once the implementation is known, hand written setters are looked up there.
+        final long resolveStart = stats.start();
+        this.columns = resolveColumns(fields);
+        stats.stop(GenerationStats.Phase.RESOLVE, resolveStart);
+        stats.setDeclarators(columns.size());
+        this.schema = new DbSchema(getClassName(), prefix, columns);
+
+        final DbModelSettings settings = DbModelSettings.getInstance(ocClassDecl.getProject());
+        typeRegistry = TypeRegistry.create(options.legacyBase64Data || !canStoreBlobData(settings), settings.typeMappings);
+        typeRegistry.setPutNullSupported(options.dirtyTracking && hasApiMethod(CONTENT_VALUES_CLASS, "putNull:"));
     }
 
-    public String generateCreateTableString(OCClassDeclaration psiClass, List<OCProperty> fields){
-        StringBuilder builder = new StringBuilder("+(NSString *) getCreateTable {\n" +
-                "    NSString *createTable = [[NSString alloc] initWithFormat:\n" +
-                "            @\"CREATE TABLE IF NOT EXISTS %@ (\"\n" +
-                "                    \"  %@  INTEGER PRIMARY KEY AUTOINCREMENT, \"//  \t\t\t\t "+this.prefix+"_FIELD_ID\n");
-        StringBuilder bVars = new StringBuilder(this.prefix + "_TABLE_NAME, \n "+this.prefix+"_FIELD_ID, \n");
-
-        final String idFieldName = this.prefix + "_FIELD_ID";
-        int cnEntries = 0;
-        int nmEntries = 0;
-        for (OCProperty field : fields) {
-            for (OCDeclarator decl : field.getDeclaration().getDeclarators()) {
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, decl.getName());
-                String fieldName = this.prefix + "_FIELD_" + upname;
-                if (idFieldName.equals(fieldName)){
-                    continue;
-                }
+    /**
+     * Returns true if NSData columns may be stored as BLOB. The table of the model must not have
+     * a base64 TEXT data column already and the DB layer has to provide blob accessors.
+     * @param settings
+     * @return
+     */
+    private boolean canStoreBlobData(DbModelSettings settings){
+        if (!hasDataColumn()){
+            return true;
+        }
+
+        final String textDataColumn = findTextDataColumn(settings.getSchemaSnapshot(schema.className));
+        if (textDataColumn != null){
+            LOG.warn(String.format("%s.%s is stored as base64 TEXT in existing tables, BLOB not used", schema.className, textDataColumn));
+            return false;
+        }
 
-                nmEntries += 1;
+        if (!hasApiMethod(CURSOR_CLASS, "getBlob:") || !hasApiMethod(CONTENT_VALUES_CLASS, "put:blob:")){
+            LOG.warn("getBlob: of " + CURSOR_CLASS + " or put:blob: of " + CONTENT_VALUES_CLASS + " not found, BLOB not used");
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean hasDataColumn(){
+        for (DbColumn col : columns) {
+            if (TypeRegistry.isDataType(col.typeName)){
+                return true;
             }
         }
 
-        for (OCProperty field : fields) {
-            for(OCDeclarator decl : field.getDeclaration().getDeclarators()){
-                String typeStr = decl.getResolvedType().getBestNameInContext(psiClass);
-                String cannonType = decl.getResolvedType().getCanonicalName();
-                String name = decl.getName();
-
-                // Convert camel case to snake case.
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
-                String fieldName = this.prefix + "_FIELD_" + upname;
-                if (idFieldName.equalsIgnoreCase(fieldName)){
-                    continue;
-                }
+        return false;
+    }
 
-                cnEntries += 1;
-                String sqlType = "TEXT";
-                if ("NSNumber *".equalsIgnoreCase(cannonType)) {
-                    sqlType = "INTEGER";
-                } else if ("NSDate *".equalsIgnoreCase(cannonType)) {
-                    sqlType = "INTEGER";
-                } else if ("BOOL".equalsIgnoreCase(cannonType)) {
-                    sqlType = "INTEGER";
-                } else if ("int".equalsIgnoreCase(cannonType)) {
-                    sqlType = "INTEGER";
-                } else if ("double".equalsIgnoreCase(cannonType)) {
-                    sqlType = "INTEGER";
+    /**
+     * Looks up NSData column stored as TEXT, in the schema snapshot or in the already generated getCreateTable.
+     * @param snapshot may be null.
+     * @return property name or null if there is none.
+     */
+    private String findTextDataColumn(SchemaSnapshot snapshot){
+        if (snapshot != null){
+            for (SnapshotColumn col : snapshot.columns) {
+                if (!col.removed && TypeRegistry.isDataType(col.typeName) && "TEXT".equalsIgnoreCase(col.sqlType)){
+                    return col.name;
                 }
+            }
+        }
 
-                String comma = cnEntries == nmEntries ? "" : ",";
-                builder.append("                    \"  %@  ").append(sqlType).append(comma).append(" \"//  \t\t\t\t ").append(fieldName).append("\n");
+        final OCMethod createTable = clsImpl == null ? null : findMethod(clsImpl, "getCreateTable");
+        if (createTable == null){
+            return null;
+        }
 
-                // Variables.
-                bVars.append(fieldName).append(comma).append(" \n");
+        for (String line : createTable.getText().split("\n")) {
+            for (DbColumn col : columns) {
+                if (TypeRegistry.isDataType(col.typeName) && line.contains(" TEXT") && line.trim().endsWith(" " + col.fieldName)){
+                    return col.name;
+                }
             }
         }
 
-        builder.append("\" );\",\n");
-        builder.append(bVars.toString());
-        builder.append("];\n" +
-                "    return createTable;\n" +
-                "}");
-        return builder.toString();
+        return null;
     }
 
-    public String generateCreateFromCursorMethod(OCClassDeclaration psiClass, List<OCProperty> fields) {
-        StringBuilder builder = new StringBuilder("/**\n" +
-                "* Create wrapper with content values pairs.\n" +
-                "*\n" +
-                "* @param args the content value to unpack.\n" +
-                "*/\n" +
-                "-(void) createFromCursor: (PEXDbCursor *) c {\n" +
-                "    int colCount = [c getColumnCount];\n" +
-                "    for(int i=0; i<colCount; i++) {\n" +
-                "        NSString *colname = [c getColumnName:i];\n");
-
-        int cnEntries = 0;
+    /**
+     * Returns true if the project declares the method in the class interface, e.g., put:blob: of PEXDbContentValues.
+     * @param className
+     * @param selector
+     * @return
+     */
+    private boolean hasApiMethod(String className, String selector){
+        final ClassPair pair = PsiUtility.getProjectClasses(ocClassDecl.getProject()).get(className);
+        return pair != null && pair.ocInterface != null && findMethod(pair.ocInterface, selector) != null;
+    }
+
+    /**
+     * Resolves type and column name of each property declarator.
+     * @param fields
+     * @return
+     */
+    public List<DbColumn> resolveColumns(List<OCProperty> fields){
+        final Map<String, String> ivars = resolveIvars();
+        List<DbColumn> cols = new ArrayList<DbColumn>();
         for (OCProperty field : fields) {
-            for(OCDeclarator decl : field.getDeclaration().getDeclarators()){
-                String typeStr = decl.getResolvedType().getBestNameInContext(psiClass);
-                String cannonType = decl.getResolvedType().getCanonicalName();
-                String name = decl.getName();
-
-                // Convert camel case to snake case.
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
-                String fieldName = this.prefix + "_FIELD_" + upname;
-
-                if (cnEntries == 0){
-                    builder.append("if ");
-                } else {
-                    builder.append(" else if ");
+            // Index markers in comments attached to the property, e.g., // @db:index or // @db:unique(group)
+            String indexGroup = null;
+            boolean unique = false;
+            for (String comment : PsiUtility.getAttachedComments(field)) {
+                final Matcher matcher = INDEX_MARKER.matcher(comment);
+                if (matcher.find()){
+                    indexGroup = matcher.group(2);
+                    unique = "unique".equals(matcher.group(1));
+                    if (indexGroup == null){
+                        indexGroup = "";
+                    }
                 }
+            }
 
-                String method = getMethodForType(decl, decl.getResolvedType());
-                builder.append(" ([" + fieldName + " isEqualToString: colname]){\n");
-                builder.append(" _"+name+" = "+method+"\n");
-                builder.append("}");
+            final Matcher attrMatcher = PROPERTY_ATTRIBUTES.matcher(field.getText());
+            final String attributes = attrMatcher.find() ? attrMatcher.group(1) : "";
+            final boolean copy = hasAttribute(attributes, "copy");
 
-                cnEntries +=1 ;
+            // Setter of atomic property cannot be paired with the synthesized getter.
+            final boolean plainSetter = !hasAttribute(attributes, "readonly") && hasAttribute(attributes, "nonatomic")
+                    && !CUSTOM_SETTER.matcher(attributes).find();
+            for (OCDeclarator decl : field.getDeclaration().getDeclarators()) {
+                final OCType type = decl.getResolvedType();
+                final String name = decl.getName();
+                final String colIndex = indexGroup == null ? null : (indexGroup.isEmpty() ? name : indexGroup);
+
+                // @dynamic property has no ivar, its setter is left alone.
+                final String ivar = ivars.containsKey(name) ? ivars.get(name) : "_" + name;
+                cols.add(new DbColumn(name, DbColumn.toFieldName(this.prefix, name), type.getCanonicalName(), type.isPointerToStringCompatible(),
+                        colIndex, unique, copy, plainSetter && ivar != null && !hasHandWrittenSetter(name),
+                        getDeclaredType(field.getDeclaration(), decl, type.getCanonicalName()), ivar == null ? "_" + name : ivar));
             }
         }
-        if (cnEntries > 0){
-            builder.append(" else {\n" +
-                    "            DDLogWarn(@\"Unknown column name %@\", colname);\n" +
-                    "        }");
-        }
 
-        builder.append("    }\n" +
-                "}");
-        return builder.toString();
+        return cols;
     }
 
-    public String getMethodForType(OCDeclarator decl, OCType typeObj) {
-        String type = typeObj.getCanonicalName();
-        if ("NSString *".equalsIgnoreCase(type) || "NSMutableString *".equalsIgnoreCase(type)) {
-            return "[c getString:i];";
-        } else if ("NSNumber *".equalsIgnoreCase(type)) {
-            if ("id".equalsIgnoreCase(decl.getName())){
-                return "[c getInt64:i];";
-            } else {
-                return "[c getInt:i];";
+    /**
+     * Instance variables of properties named by @synthesize in the implementation, null for @dynamic properties.
+     * Properties not listed use the default _name ivar.
+     * @return ivar by property name.
+     */
+    private Map<String, String> resolveIvars(){
+        final Map<String, String> ivars = new HashMap<String, String>();
+        if (clsImpl == null){
+            return ivars;
+        }
+
+        final Matcher matcher = SYNTHESIZE.matcher(clsImpl.getText());
+        while (matcher.find()) {
+            final boolean dynamic = "dynamic".equals(matcher.group(1));
+            for (String entry : matcher.group(2).split(",")) {
+                final String[] parts = entry.split("=");
+                final String name = parts[0].trim();
+                ivars.put(name, dynamic ? null : (parts.length > 1 ? parts[1].trim() : name));
             }
-        } else if ("NSDate *".equalsIgnoreCase(type)) {
-            return "[PEXDbModelBase getDateFromCursor:c idx:i];";
-        } else if ("NSData *".equalsIgnoreCase(type) || "NSMutableData *".equalsIgnoreCase(type)) {
-            return "[[NSData alloc] initWithBase64EncodedData:[c getString:i] options:0];";
-        } else if ("BOOL".equalsIgnoreCase(type)) {
-            return "[[c getInt:i] boolValue];";
-        } else if ("int".equalsIgnoreCase(type)) {
-            return "[[c getInt:i] integerValue];";
-        } else if ("double".equalsIgnoreCase(type)) {
-            return "[[c getDouble:i] doubleValue];";
-        } else {
-            return "[c getString:i]; //TODO:verify, type=" + type;
         }
+
+        return ivars;
     }
 
-    public String generateGetDbContentValuesMethod(OCClassDeclaration psiClass, List<OCProperty> fields){
-        StringBuilder builder = new StringBuilder("/**\n" +
-                "* Pack the object content value to store\n" +
-                "*\n" +
-                "* @return The content value representing the message\n" +
-                "*/\n" +
-                "-(PEXDbContentValues *) getDbContentValues {\n" +
-                "    PEXDbContentValues * cv = [[PEXDbContentValues alloc] init];\n");
-
-        int cnEntries = 0;
-        for (OCProperty field : fields) {
-            for(OCDeclarator decl : field.getDeclaration().getDeclarators()){
-                String typeStr = decl.getResolvedType().getBestNameInContext(psiClass);
-                String cannonType = decl.getResolvedType().getCanonicalName();
-                String name = decl.getName();
-
-                // Convert camel case to snake case.
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
-                String fieldName = this.prefix + "_FIELD_" + upname;
-
-                // Special case - identifier.
-                if ("id".equalsIgnoreCase(name)) {
-                    builder.append("if (_id != nil && [_id longLongValue] != -1ll) {\n" +
-                            "    [cv put: "+fieldName+" NSNumberAsLongLong: _id];\n" +
-                            "}\n");
-                    continue;
-                }
+    /**
+     * Type as written in the property declaration, with the pointer of the declarator, e.g., "PEXUserId *".
+     * @param declaration
+     * @param decl
+     * @param canonicalType used if the type element is not available.
+     * @return
+     */
+    private static String getDeclaredType(OCDeclaration declaration, OCDeclarator decl, String canonicalType){
+        final OCTypeElement typeElement = declaration.getTypeElement();
+        if (typeElement == null){
+            return canonicalType;
+        }
 
-                String method = getPutMethodForType(decl, decl.getResolvedType());
-                builder.append("if (_"+name+" != nil)\n" +
-                        "    [cv  put: "+fieldName+" "+(method == null ? " string " : method)+" : _"+name+" ]; ");
-                if (method == null){
-                    builder.append(" // TODO:verify type: ").append(cannonType);
-                }
+        final String declText = decl.getText();
+        final int nameIdx = declText.indexOf(decl.getName());
+        final String pointer = nameIdx < 0 ? "" : declText.substring(0, nameIdx).replaceAll("[^*]", "");
+        return typeElement.getText().trim() + (pointer.isEmpty() ? "" : " " + pointer);
+    }
 
-                builder.append("\n");
-                cnEntries +=1 ;
-            }
+    private static boolean hasAttribute(String attributes, String attribute){
+        return Pattern.compile("\\b" + attribute + "\\b").matcher(attributes).find();
+    }
+
+    /**
+     * Returns true if the class implements setter of the property and it was not generated by dirty tracking.
+     * @param name property name
+     * @return
+     */
+    private boolean hasHandWrittenSetter(String name){
+        if (clsImpl == null){
+            return false;
         }
 
-        builder.append("\nreturn cv; \n}\n");
-        return builder.toString();
+        final OCMethod setter = findMethod(clsImpl, getSetterName(name));
+        return setter != null && !setter.getText().contains(DbCodeGenerator.DIRTY_IVAR);
+    }
+
+    private static String getSetterName(String name){
+        return "set" + StringUtil.capitalize(name) + ":";
+    }
+
+    public String generateCreateTableString(OCClassDeclaration psiClass, List<OCProperty> fields){
+        return newGenerator(resolveColumns(fields)).generateCreateTableString();
+    }
+
+    public String generateCreateFromCursorMethod(OCClassDeclaration psiClass, List<OCProperty> fields) {
+        return newGenerator(resolveColumns(fields)).generateCreateFromCursorMethod();
+    }
+
+    public String getMethodForType(OCDeclarator decl, OCType typeObj) {
+        return newGenerator(new ArrayList<DbColumn>()).getMethodForType(toColumn(decl, typeObj));
+    }
+
+    public String generateGetDbContentValuesMethod(OCClassDeclaration psiClass, List<OCProperty> fields){
+        return newGenerator(resolveColumns(fields)).generateGetDbContentValuesMethod();
     }
 
     public String getPutMethodForType(OCDeclarator decl, OCType typeObj) {
-        String type = typeObj.getCanonicalName();
-        if ("NSNumber *".equalsIgnoreCase(type)) {
-            return "number";
-        } else if ("NSDate *".equalsIgnoreCase(type)) {
-            return "date";
-        } else if ("NSData *".equalsIgnoreCase(type) || "NSMutableData *".equalsIgnoreCase(type)) {
-            return "data";
-        } else if ("BOOL".equalsIgnoreCase(type)) {
-            return "integer";
-        } else if ("int".equalsIgnoreCase(type)) {
-            return "integer";
-        } else if ("double".equalsIgnoreCase(type)) {
-            return "double";
-        } else if ("NSString *".equalsIgnoreCase(type) || "NSMutableString *".equalsIgnoreCase(type) || typeObj.isPointerToStringCompatible()){
-            return "string";
-        } else {
-            return null;
+        return newGenerator(new ArrayList<DbColumn>()).getPutMethodForType(toColumn(decl, typeObj));
+    }
+
+    private static DbColumn toColumn(OCDeclarator decl, OCType typeObj) {
+        return new DbColumn(decl.getName(), null, typeObj.getCanonicalName(), typeObj.isPointerToStringCompatible());
+    }
+
+    private DbCodeGenerator newGenerator(List<DbColumn> columns) {
+        return new DbCodeGenerator(new DbSchema(getClassName(), prefix, columns), options, getTypeRegistry());
+    }
+
+    private String getClassName() {
+        if (clsDecl != null){
+            return clsDecl.getName();
         }
+
+        return ocClassDecl == null ? null : ocClassDecl.getName();
+    }
+
+    /**
+     * Generates code from the schema resolved in setContext, cached code is reused.
+     * Does not touch PSI, may be called outside of read action, e.g., in a background thread.
+     * @return
+     */
+    public GeneratedModel prepare() {
+        if (generated == null){
+            final long start = stats.start();
+            generated = DbCodeGenerator.generateCached(schema, options, getTypeRegistry());
+            stats.stop(GenerationStats.Phase.GENERATE, start);
+        }
+
+        return generated;
     }
 
     public List<OCDeclaration> generateFieldDeclaration(){
@@ -266,23 +354,11 @@ public class DbModelBuilder {
         final String table = "extern NSString * " + this.prefix + "_TABLE;\n";
         decls.add(OCElementFactory.declarationFromText(table, psiFile));
 
-        int cnEntries = 0;
-        for (OCProperty field : fields) {
-            for(OCDeclarator decl : field.getDeclaration().getDeclarators()){
-
-                String typeStr = decl.getResolvedType().getBestNameInContext(ocClassDecl);
-                String cannonType = decl.getResolvedType().getCanonicalName();
-                String name = decl.getName();
-
-                // Convert camel case to snake case.
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
-                String fieldName = this.prefix + "_FIELD_" + upname;
-
-                String curDecl = "extern NSString * " + fieldName + "; \n";
-                builderInt.append(curDecl);
+        for (DbColumn col : columns) {
+            String curDecl = "extern NSString * " + col.fieldName + "; \n";
+            builderInt.append(curDecl);
 
-                decls.add(OCElementFactory.declarationFromText(curDecl, psiFile));
-            }
+            decls.add(OCElementFactory.declarationFromText(curDecl, psiFile));
         }
 
         return decls;
@@ -295,152 +371,733 @@ public class DbModelBuilder {
         final String table = "NSString * " + this.prefix + "_TABLE = @\"FIXME\"; //TODO: FIXME: give propper table name\n";
         decls.add(OCElementFactory.declarationFromText(table, psiFile));
 
-        int cnEntries = 0;
-        for (OCProperty field : fields) {
-            for(OCDeclarator decl : field.getDeclaration().getDeclarators()){
-
-                String typeStr = decl.getResolvedType().getBestNameInContext(ocClassDecl);
-                String cannonType = decl.getResolvedType().getCanonicalName();
-                String name = decl.getName();
-
-                // Convert camel case to snake case.
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
-                String fieldName = this.prefix + "_FIELD_" + upname;
+        for (DbColumn col : columns) {
+            builderImp.append("NSString * ").append(col.fieldName).append(" = @\"").append(col.name).append("\";\n");
 
-                builderImp.append("NSString * ").append(fieldName).append(" = @\"").append(name).append("\";\n");
+            String curDef = builderImp.toString();
+            decls.add(OCElementFactory.declarationFromText(curDef, psiFile));
 
-                String curDef = builderImp.toString();
-                decls.add(OCElementFactory.declarationFromText(curDef, psiFile));
-
-                builderImp = new StringBuilder();
-            }
+            builderImp = new StringBuilder();
         }
 
         return decls;
     }
 
     public void generateCreateTable() {
-        // Exists in declaration file?
-        OCMethod declMethod = findMethod(clsDecl, "getCreateTable");
-        if (declMethod == null){
-            final String declMethodString = "+(NSString *) getCreateTable;\n";
-            declMethod = OCElementFactory.methodFromText(declMethodString, clsDecl, true);
-            PsiElement createTableElement = clsDecl.addBefore(declMethod, clsDecl.getLastChild());
-            codeStyleManager.reformat(createTableElement);
+        addMethod("getCreateTable", "+(NSString *) getCreateTable;\n", prepare().createTable);
+    }
+
+    /**
+     * Generates getCreateIndexes with indexes marked on properties.
+     */
+    public void generateCreateIndexes() {
+        addMethod("getCreateIndexes", "+ (NSArray *)getCreateIndexes;\n", prepare().createIndexes);
+    }
+
+    public void generateCreateFromCursor(){
+        if (options.indexedCursor){
+            generateCreateFromCursorIndexed();
+            return;
         }
 
-        final String createTableMethodAsString = generateCreateTableString(clsImpl, fields);
-        OCMethod createTableMethod = OCElementFactory.methodFromText(createTableMethodAsString, clsImpl, true);
+        addMethod("createFromCursor:", "- (void)createFromCursor:(PEXDbCursor *)c;\n", prepare().createFromCursor);
+    }
 
-        OCMethod implMethod = findMethod(clsImpl, "getCreateTable");
-        PsiElement createTableElement = implMethod == null ?
-                  clsImpl.addBefore(createTableMethod, clsImpl.getLastChild())
-                : clsImpl.addAfter(createTableMethod, implMethod);
-        codeStyleManager.reformat(createTableElement);
+    /**
+     * Generates column index struct, bindCursorColumns, createFromCursor:columns: and createFromCursor:
+     * so the column names are resolved once per cursor.
+     */
+    public void generateCreateFromCursorIndexed(){
+        generateCursorBinding();
+        addMethod("createFromCursor:", "- (void)createFromCursor:(PEXDbCursor *)c;\n", prepare().createFromCursorBinding);
     }
 
-    public void generateCreateFromCursor(){
-        // Exists in declaration file?
-        OCMethod declMethod = findMethod(clsDecl, "createFromCursor:");
-        if (declMethod == null){
-            final String declMethodString = "- (void)createFromCursor:(PEXDbCursor *)c;\n";
+    /**
+     * Generates column index struct, bindCursorColumns and createFromCursor:columns:
+     */
+    public void generateCursorBinding(){
+        final GeneratedModel code = prepare();
+        addTypedef(code.columnsStructName, code.columnsStruct);
+        addMethod("bindCursorColumns:columns:",
+                "+ (void)bindCursorColumns:(PEXDbCursor *)c columns:("+code.columnsStructName+" *)cols;\n",
+                code.bindCursorColumns);
+        addMethod("createFromCursor:columns:",
+                "- (void)createFromCursor:(PEXDbCursor *)c columns:(const "+code.columnsStructName+" *)cols;\n",
+                code.createFromCursorIndexed);
+    }
+
+    /**
+     * Generates loadAllFromCursor: class method, cursor columns binding is generated as well if missing.
+     */
+    public void generateLoadAllFromCursor(){
+        if (findMethod(clsImpl, "createFromCursor:columns:") == null){
+            generateCursorBinding();
+        }
+
+        addMethod("loadAllFromCursor:", "+ (NSMutableArray *)loadAllFromCursor:(PEXDbCursor *)c;\n", prepare().loadAllFromCursor);
+    }
+
+    /**
+     * Adds method declaration to the interface if missing and method implementation to the implementation.
+     * @param methodName selector of the method.
+     * @param declMethodString method declaration.
+     * @param methodString method implementation.
+     */
+    private void addMethod(String methodName, String declMethodString, String methodString){
+        if (checkOnly){
+            checkMethod(methodName, declMethodString, methodString);
+            return;
+        }
+
+        // Exists in declaration file? Methods declared otherwise, e.g., setters, have no declaration string.
+        long start = stats.start();
+        OCMethod declMethod = declMethodString == null ? null : findMethod(clsDecl, methodName);
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (declMethod == null && declMethodString != null){
+            start = stats.start();
             declMethod = OCElementFactory.methodFromText(declMethodString, clsDecl, true);
+            stats.stop(GenerationStats.Phase.PARSE, start);
+
+            start = stats.start();
             PsiElement elem = clsDecl.addBefore(declMethod, clsDecl.getLastChild());
-            codeStyleManager.reformat(elem);
+            stats.stop(GenerationStats.Phase.INSERT, start);
+            stats.elementInserted();
+            reformat(elem);
+        }
+
+        // Skip the write entirely if the existing method is the same, modulo formatting.
+        start = stats.start();
+        OCMethod implMethod = findMethod(clsImpl, methodName);
+        final boolean upToDate = implMethod != null && isSameCode(implMethod.getText(), methodString);
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (upToDate){
+            LOG.debug("Method up to date, skipping: " + methodName);
+            stats.elementSkipped();
+            return;
         }
 
-        final String methodString = generateCreateFromCursorMethod(clsImpl, fields);
+        start = stats.start();
         OCMethod method = OCElementFactory.methodFromText(methodString, clsImpl, true);
+        stats.stop(GenerationStats.Phase.PARSE, start);
+
+        start = stats.start();
+        PsiElement elem;
+        if (implMethod == null){
+            elem = clsImpl.addBefore(method, clsImpl.getLastChild());
+        } else if (replaceExisting){
+            elem = implMethod.replace(method);
+        } else {
+            elem = clsImpl.addAfter(method, implMethod);
+        }
+        stats.stop(GenerationStats.Phase.INSERT, start);
+        stats.elementInserted();
+        reformat(elem);
+    }
+
+    /**
+     * Adds typedef to the declaration file before the class interface, replaces existing one with the same name.
+     * @param typeName
+     * @param typedefString
+     */
+    private void addTypedef(String typeName, String typedefString){
+        if (checkOnly){
+            OCDeclaration prevTypedef = findDeclaration(fileDecl, typeName);
+            if (prevTypedef == null){
+                reportDrift("missing typedef " + typeName);
+            } else if (!isSameCode(prevTypedef.getText(), typedefString)){
+                reportDrift("outdated typedef " + typeName);
+            }
+            return;
+        }
+
+        long start = stats.start();
+        OCDeclaration prevTypedef = findDeclaration(fileDecl, typeName);
+        final boolean upToDate = prevTypedef != null && isSameCode(prevTypedef.getText(), typedefString);
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (upToDate){
+            stats.elementSkipped();
+            return;
+        }
+
+        start = stats.start();
+        OCDeclaration typedef = OCElementFactory.declarationFromText(typedefString, fileDecl);
+        stats.stop(GenerationStats.Phase.PARSE, start);
+
+        start = stats.start();
+        PsiElement elem = prevTypedef == null ?
+                fileDecl.addBefore(typedef, clsDecl)
+                : prevTypedef.replace(typedef);
+        stats.stop(GenerationStats.Phase.INSERT, start);
+        stats.elementInserted();
+        reformat(elem);
+    }
+
+    /**
+     * Adds class extension to the implementation file before the class implementation, replaces the existing one.
+     * Existing extension is recognized by the marker it contains, other class extensions are left untouched.
+     * @param marker
+     * @param extensionString
+     */
+    private void addClassExtension(String marker, String extensionString){
+        long start = stats.start();
+        OCInterface prevExtension = null;
+        for (OCInterface ocInterface : PsiTreeUtil.findChildrenOfType(fileImpl, OCInterface.class)) {
+            if (ocInterface != clsDecl && clsImpl.getName().equals(ocInterface.getName()) && ocInterface.getText().contains(marker)){
+                prevExtension = ocInterface;
+                break;
+            }
+        }
+
+        final boolean upToDate = prevExtension != null && isSameCode(prevExtension.getText(), extensionString);
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (checkOnly){
+            if (prevExtension == null){
+                reportDrift("missing class extension with " + marker);
+            } else if (!upToDate){
+                reportDrift("outdated class extension with " + marker);
+            }
+            return;
+        }
+
+        if (upToDate){
+            stats.elementSkipped();
+            return;
+        }
+
+        start = stats.start();
+        final PsiFile dummyFile = PsiFileFactory.getInstance(fileImpl.getProject()).createFileFromText("dummy.m", OCLanguage.getInstance(), extensionString);
+        final OCInterface extension = PsiTreeUtil.findChildOfType(dummyFile, OCInterface.class);
+        stats.stop(GenerationStats.Phase.PARSE, start);
+        if (extension == null){
+            LOG.warn("Cannot parse class extension: " + extensionString);
+            return;
+        }
+
+        start = stats.start();
+        PsiElement elem = prevExtension == null ?
+                fileImpl.addBefore(extension, clsImpl)
+                : prevExtension.replace(extension);
+        stats.stop(GenerationStats.Phase.INSERT, start);
+        stats.elementInserted();
+        reformat(elem);
+    }
+
+    /**
+     * Adds helper class to the implementation file before the class implementation, replaces the existing one.
+     * @param name helper class name
+     * @param interfaceString
+     * @param implementationString
+     */
+    private void addHelperClass(String name, String interfaceString, String implementationString){
+        long start = stats.start();
+        OCInterface prevInterface = null;
+        for (OCInterface ocInterface : PsiTreeUtil.findChildrenOfType(fileImpl, OCInterface.class)) {
+            if (name.equals(ocInterface.getName())){
+                prevInterface = ocInterface;
+                break;
+            }
+        }
+
+        OCImplementation prevImplementation = null;
+        for (OCImplementation ocImplementation : PsiTreeUtil.findChildrenOfType(fileImpl, OCImplementation.class)) {
+            if (name.equals(ocImplementation.getName())){
+                prevImplementation = ocImplementation;
+                break;
+            }
+        }
+
+        final boolean upToDate = prevInterface != null && prevImplementation != null
+                && isSameCode(prevInterface.getText(), interfaceString)
+                && isSameCode(prevImplementation.getText(), implementationString);
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (checkOnly){
+            if (prevInterface == null || prevImplementation == null){
+                reportDrift("missing helper class " + name);
+            } else if (!upToDate){
+                reportDrift("outdated helper class " + name);
+            }
+            return;
+        }
+
+        if (upToDate){
+            stats.elementSkipped();
+            return;
+        }
+
+        start = stats.start();
+        final PsiFile dummyFile = PsiFileFactory.getInstance(fileImpl.getProject()).createFileFromText("dummy.m", OCLanguage.getInstance(),
+                interfaceString + "\n\n" + implementationString);
+        final OCInterface helperInterface = PsiTreeUtil.findChildOfType(dummyFile, OCInterface.class);
+        final OCImplementation helperImplementation = PsiTreeUtil.findChildOfType(dummyFile, OCImplementation.class);
+        stats.stop(GenerationStats.Phase.PARSE, start);
+        if (helperInterface == null || helperImplementation == null){
+            LOG.warn("Cannot parse helper class " + name);
+            return;
+        }
+
+        start = stats.start();
+        final PsiElement iface = prevInterface == null ?
+                fileImpl.addBefore(helperInterface, clsImpl)
+                : prevInterface.replace(helperInterface);
+        final PsiElement impl = prevImplementation == null ?
+                fileImpl.addBefore(helperImplementation, clsImpl)
+                : prevImplementation.replace(helperImplementation);
+        stats.stop(GenerationStats.Phase.INSERT, start);
+        stats.elementInserted();
+        reformat(iface);
+        reformat(impl);
+    }
+
+    /**
+     * Adds #import of the header to the implementation file after the last import, if not imported yet.
+     * @param header header with brackets or quotes, e.g., &lt;sqlite3.h&gt;
+     */
+    private void addImport(String header){
+        long start = stats.start();
+        final String headerName = header.substring(1, header.length() - 1);
+        PsiElement lastInclude = null;
+        boolean present = false;
+        for (PsiElement child : fileImpl.getChildren()) {
+            if (child instanceof OCIncludeDirective){
+                lastInclude = child;
+                present |= child.getText().contains(headerName);
+            }
+        }
+
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (present){
+            stats.elementSkipped();
+            return;
+        }
+
+        if (checkOnly){
+            reportDrift("missing import of " + header);
+            return;
+        }
+
+        start = stats.start();
+        final PsiFile dummyFile = PsiFileFactory.getInstance(fileImpl.getProject()).createFileFromText("dummy.m", OCLanguage.getInstance(), "#import " + header + "\n");
+        final OCIncludeDirective directive = PsiTreeUtil.findChildOfType(dummyFile, OCIncludeDirective.class);
+        stats.stop(GenerationStats.Phase.PARSE, start);
+        if (directive == null){
+            LOG.warn("Cannot parse import of " + header);
+            return;
+        }
+
+        start = stats.start();
+        final PsiElement newLine = PsiParserFacade.SERVICE.getInstance(fileImpl.getProject()).createWhiteSpaceFromText("\n");
+        if (lastInclude == null){
+            fileImpl.addAfter(newLine, fileImpl.addBefore(directive, fileImpl.getFirstChild()));
+        } else {
+            fileImpl.addBefore(newLine, fileImpl.addAfter(directive, lastInclude));
+        }
+        stats.stop(GenerationStats.Phase.INSERT, start);
+        stats.elementInserted();
+    }
+
+    /**
+     * Check only mode, reports missing or outdated method.
+     * @param methodName
+     * @param methodString
+     */
+    private void checkMethod(String methodName, String declMethodString, String methodString){
+        if (declMethodString != null && findMethod(clsDecl, methodName) == null){
+            reportDrift("missing declaration of " + methodName);
+        }
+
+        OCMethod implMethod = findMethod(clsImpl, methodName);
+        if (implMethod == null){
+            reportDrift("missing method " + methodName);
+        } else if (!isSameCode(implMethod.getText(), methodString)){
+            reportDrift("outdated method " + methodName);
+        }
+    }
+
+    /**
+     * Compares code ignoring whitespace, i.e., formatting, and the leading doc comment.
+     * @param existing
+     * @param generated
+     * @return
+     */
+    public static boolean isSameCode(String existing, String generated){
+        return normalizeCode(existing).equals(normalizeCode(generated));
+    }
+
+    public static String normalizeCode(String code){
+        return code == null ? "" : LEADING_COMMENT.matcher(code).replaceFirst("").replaceAll("\\s+", "");
+    }
 
-        OCMethod implMethod = findMethod(clsImpl, "createFromCursor:");
-        PsiElement elem = implMethod == null ?
-                clsImpl.addBefore(method, clsImpl.getLastChild())
-                : clsImpl.addAfter(method, implMethod);
-        codeStyleManager.reformat(elem);
+    private void reportDrift(String message){
+        final String msg = (clsDecl == null ? "" : clsDecl.getName() + ": ") + message;
+        LOG.info("Drift: " + msg);
+        drift.add(msg);
     }
 
     public void generateGetContentValues(){
-        // Exists in declaration file?
-        OCMethod declMethod = findMethod(clsDecl, "getDbContentValues");
-        if (declMethod == null){
-            final String declMethodString = "- (PEXDbContentValues *)getDbContentValues;\n";
-            declMethod = OCElementFactory.methodFromText(declMethodString, clsDecl, true);
-            PsiElement elem = clsDecl.addBefore(declMethod, clsDecl.getLastChild());
-            codeStyleManager.reformat(elem);
+        addMethod("getDbContentValues", "- (PEXDbContentValues *)getDbContentValues;\n", prepare().contentValues);
+    }
+
+    /**
+     * Generates cached INSERT statement and bindToStatement: binding properties by index, without content values.
+     * The implementation file imports sqlite3.h.
+     */
+    public void generateInsertStatement(){
+        final GeneratedModel code = prepare();
+        addImport(SQLITE_HEADER);
+        addMethod("getInsertStatement", "+ (NSString *)getInsertStatement;\n", code.insertStatement);
+        addMethod("bindToStatement:", "- (void)bindToStatement:(struct sqlite3_stmt *)stmt;\n", code.bindToStatement);
+    }
+
+    /**
+     * Generates insertBatch:intoDatabase: writing many models in chunked transactions with one prepared statement.
+     * Uses the insert statement and its binder, see generateInsertStatement. The implementation file imports sqlite3.h.
+     */
+    public void generateInsertBatch(){
+        addImport(SQLITE_HEADER);
+        addMethod("insertBatch:intoDatabase:", "+ (NSUInteger)insertBatch:(NSArray *)models intoDatabase:(struct sqlite3 *)db;\n",
+                prepare().insertBatch);
+    }
+
+    /**
+     * Generates full projection if enabled and the named sub-projections from options with their loaders.
+     */
+    public void generateProjections(){
+        final GeneratedModel code = prepare();
+        if (code.fullProjection != null){
+            addMethod("getFullProjection", "+ (NSArray *)getFullProjection;\n", code.fullProjection);
         }
+        for (GeneratedMethod method : code.projections) {
+            addMethod(method.selector, method.declaration, method.implementation);
+        }
+    }
 
-        final String methodString = generateGetDbContentValuesMethod(clsImpl, fields);
-        OCMethod method = OCElementFactory.methodFromText(methodString, clsImpl, true);
+    /**
+     * Generates dirty columns bitset in a class extension, setters marking columns dirty,
+     * getDirtyContentValues, isDirty and clearDirty. Setters not written by the generator are never replaced.
+     */
+    public void generateDirtyTracking(){
+        final GeneratedModel code = prepare();
+        addClassExtension(DbCodeGenerator.DIRTY_IVAR, code.dirtyExtension);
+        for (GeneratedMethod method : code.dirtyMethods) {
+            final OCMethod existing = method.declaration == null ? findMethod(clsImpl, method.selector) : null;
+            if (existing != null && !existing.getText().contains(DbCodeGenerator.DIRTY_IVAR)){
+                LOG.info("Hand written setter kept: " + method.selector);
+                continue;
+            }
 
-        OCMethod implMethod = findMethod(clsImpl, "getDbContentValues");
-        PsiElement elem = implMethod == null ?
-                clsImpl.addBefore(method, clsImpl.getLastChild())
-                : clsImpl.addAfter(method, implMethod);
-        codeStyleManager.reformat(elem);
+            addMethod(method.selector, method.declaration, method.implementation);
+        }
     }
 
     /**
-     * Generates globally defined constants for DB fields.
+     * Generates NSCache identity map with loadById:, delete by id and invalidation, imports sqlite3.h and objc/runtime.h.
      */
-    public void generateDbFields() {
-        List<NewFieldRecord> newFields = new ArrayList<NewFieldRecord>();
+    public void generateIdentityCache(){
+        final GeneratedModel code = prepare();
+        if (code.identityCacheMethods.isEmpty()){
+            return;
+        }
 
-        // Add table
-        newFields.add(new NewFieldRecord(prefix + "_TABLE_NAME", clsDecl.getName(), "TODO: FIXME: give a proper table name"));
-        for (OCProperty field : fields) {
-            for (OCDeclarator decl : field.getDeclaration().getDeclarators()) {
-                String name = decl.getName();
+        addImport(SQLITE_HEADER);
+        addImport(RUNTIME_HEADER);
+        for (GeneratedMethod method : code.identityCacheMethods) {
+            addMethod(method.selector, method.declaration, method.implementation);
+        }
+    }
 
-                // Convert camel case to snake case.
-                String upname = CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, name);
-                String fieldName = this.prefix + "_FIELD_" + upname;
+    /**
+     * Generates lazy cursor enumerator class, enumeratorForCursor:reuse: and resetForReuse.
+     */
+    public void generateCursorEnumerator(){
+        final GeneratedModel code = prepare();
+        addHelperClass(code.cursorEnumeratorName, code.cursorEnumeratorInterface, code.cursorEnumeratorImplementation);
+        for (GeneratedMethod method : code.cursorEnumeratorMethods) {
+            addMethod(method.selector, method.declaration, method.implementation);
+        }
+    }
 
-                // Add new field definition to array.
-                newFields.add(new NewFieldRecord(fieldName, name));
+    /**
+     * Generates schema version and ALTER TABLE upgrade statements from the columns added since the stored snapshot.
+     * Snapshot in the project settings is updated only if updateSchemaSnapshot is set and not in check only mode,
+     * the stored snapshot is used as is otherwise, so automatic updates never bump the version.
+     * In check only mode columns added since the stored snapshot are reported as drift, the version has to be bumped.
+     */
+    public void generateSchemaUpgrade(){
+        final DbModelSettings settings = DbModelSettings.getInstance(ocClassDecl.getProject());
+        final SchemaSnapshot stored = settings.getSchemaSnapshot(schema.className);
+        final SchemaSnapshot current = SchemaSnapshot.update(stored, schema, getTypeRegistry());
+        if (checkOnly && stored != null && current.version != stored.version){
+            for (SnapshotColumn col : current.getColumnsAddedIn(current.version)) {
+                reportDrift("column " + col.name + " added without schema version bump");
             }
         }
 
+        final boolean update = updateSchemaSnapshot && !checkOnly;
+        final SchemaSnapshot snapshot = update || stored == null ? current : stored;
+        final DbCodeGenerator generator = new DbCodeGenerator(schema, options, getTypeRegistry());
+        addMethod("getSchemaVersion", "+ (int)getSchemaVersion;\n", generator.generateSchemaVersionMethod(snapshot));
+        addMethod("getUpgradeStatementsFrom:", "+ (NSArray *)getUpgradeStatementsFrom:(int)oldVersion;\n",
+                generator.generateUpgradeStatementsMethod(snapshot));
+
+        if (update){
+            settings.putSchemaSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Generates globally defined constants for DB fields.
+     */
+    public void generateDbFields() {
+        // Table name first, then one field per column.
+        final List<NewFieldRecord> newFields = new DbCodeGenerator(schema, options, getTypeRegistry()).generateFieldRecords();
+        final NewFieldRecord tableField = newFields.get(0);
+
+        // Index existing global fields, files are scanned only if changed since the last run.
+        final long lookupStart = stats.start();
+        final GlobalFieldIndex declIndex = GlobalFieldIndex.forFile(fileDecl);
+        final GlobalFieldIndex implIndex = GlobalFieldIndex.forFile(fileImpl);
+        stats.stop(GenerationStats.Phase.LOOKUP, lookupStart);
+
         // Iterate over collected new fields.
         PsiElement prevDecl = null;
         PsiElement prevImpl = null;
         for (NewFieldRecord newField : newFields) {
+            if (checkOnly){
+                checkField(declIndex, implIndex, newField, newField != tableField);
+                continue;
+            }
+
             // Find if field is already present in declaration file.
-            FieldDecl prevFieldDecl = findField(fileDecl, newField.name);
+            FieldDecl prevFieldDecl = declIndex.get(newField.name);
             if (prevFieldDecl == null){
-                OCDeclaration fieldDecl = OCElementFactory.declarationFromText(newField.decl, fileDecl);
+                OCDeclaration fieldDecl = parseDeclaration(newField.decl, fileDecl);
+                long start = stats.start();
                 PsiElement fieldElem = prevDecl == null ? fileDecl.addBefore(fieldDecl, clsDecl) : fileDecl.addAfter(fieldDecl, prevDecl);
-                prevDecl = codeStyleManager.reformat(fieldElem);
+                stats.stop(GenerationStats.Phase.INSERT, start);
+                stats.elementInserted();
+                prevDecl = reformat(fieldElem);
+                registerField(declIndex, prevDecl);
             } else {
                 prevDecl = prevFieldDecl.declaration;
             }
 
             // Find if field is already present in implementation file.
-            FieldDecl prevFieldImpl = findField(fileImpl, newField.name);
+            FieldDecl prevFieldImpl = implIndex.get(newField.name);
             if (prevFieldImpl == null){
-                OCDeclaration fieldImpl = OCElementFactory.declarationFromText(newField.impl, fileImpl);
+                OCDeclaration fieldImpl = parseDeclaration(newField.impl, fileImpl);
+                long start = stats.start();
                 PsiElement fieldElem = prevImpl == null ? fileImpl.addBefore(fieldImpl, clsImpl) : fileImpl.addAfter(fieldImpl, prevImpl);
-                prevImpl = codeStyleManager.reformat(fieldElem);
+                stats.stop(GenerationStats.Phase.INSERT, start);
+                stats.elementInserted();
+                prevImpl = reformat(fieldElem);
+                registerField(implIndex, prevImpl);
                 continue;
             } else {
                 prevImpl = prevFieldImpl.declaration;
             }
 
-            // Present, do we have exact match of the values?
-            final String valueInitializer = "\"" + newField.value + "\"";
-            if (newField.value.equals(prevFieldImpl.initializer) || valueInitializer.equals(prevFieldImpl.initializer)){
+            // Present, do we have exact match of the values? Table name is meant to be customized.
+            if (newField == tableField || isSameValue(newField, prevFieldImpl)){
                 continue;
             }
 
             // Present and value differs, add anyway, but under previous field.
             newField.addComment("TODO: verify");
-            OCDeclaration fieldImpl = OCElementFactory.declarationFromText(newField.impl, fileImpl);
+            OCDeclaration fieldImpl = parseDeclaration(newField.impl, fileImpl);
+            long start = stats.start();
             PsiElement fieldElem = fileImpl.addAfter(fieldImpl, prevFieldImpl.declaration);
-            codeStyleManager.reformat(fieldElem);
+            stats.stop(GenerationStats.Phase.INSERT, start);
+            stats.elementInserted();
+            registerField(implIndex, reformat(fieldElem));
+        }
+    }
+
+    private OCDeclaration parseDeclaration(String text, PsiFile context){
+        final long start = stats.start();
+        try {
+            return OCElementFactory.declarationFromText(text, context);
+        } finally {
+            stats.stop(GenerationStats.Phase.PARSE, start);
+        }
+    }
+
+    private static boolean isSameValue(NewFieldRecord newField, FieldDecl fieldDecl){
+        final String valueInitializer = "\"" + newField.value + "\"";
+        return newField.value.equals(fieldDecl.initializer) || valueInitializer.equals(fieldDecl.initializer);
+    }
+
+    /**
+     * Check only mode, reports missing field or field with different value.
+     */
+    private void checkField(GlobalFieldIndex declIndex, GlobalFieldIndex implIndex, NewFieldRecord newField, boolean checkValue){
+        if (declIndex.get(newField.name) == null){
+            reportDrift("missing declaration of " + newField.name);
+        }
+
+        final FieldDecl fieldImpl = implIndex.get(newField.name);
+        if (fieldImpl == null){
+            reportDrift("missing definition of " + newField.name);
+        } else if (checkValue && !isSameValue(newField, fieldImpl)){
+            reportDrift("different value of " + newField.name);
+        }
+    }
+
+    /**
+     * Reformats inserted element, or only records it if reformatting is deferred.
+     * @param elem
+     * @return element to use in place of the inserted one.
+     */
+    private PsiElement reformat(PsiElement elem){
+        if (!deferredReformat){
+            final long start = stats.start();
+            final PsiElement reformatted = codeStyleManager.reformat(elem);
+            stats.stop(GenerationStats.Phase.REFORMAT, start);
+            stats.reformatted(1);
+            return reformatted;
+        }
+
+        if (reformatBatch == null){
+            reformatBatch = new ReformatBatch(ocClassDecl.getProject());
+        }
+
+        reformatBatch.add(elem, stats);
+        return elem;
+    }
+
+    /**
+     * Reformats all elements inserted since the last flush, one formatter pass per file.
+     * Should be called at the end of the write command.
+     */
+    public void flushReformat(){
+        if (reformatBatch == null){
+            return;
+        }
+
+        // Calls and time are recorded in stats by the batch.
+        reformatBatch.flush();
+        reformatBatch = null;
+    }
+
+    private static void registerField(GlobalFieldIndex index, PsiElement elem){
+        if (elem instanceof OCDeclaration){
+            index.register((OCDeclaration) elem);
+        }
+    }
+
+    /**
+     * Generates DB fields, createTable, createFromCursor and getDbContentValues
+     * from the columns resolved in setContext. Intended to be called in a single write command.
+     * In indexed cursor mode loadAllFromCursor: is generated as well.
+     * Schema version and upgrade statements are generated from the stored schema snapshot.
+     * With prepared statements option, insert statement with its binder and batch insert are generated
+     * for writes without content values.
+     */
+    public void generateAll() {
+        generateDbFields();
+        generateCreateTable();
+        generateCreateIndexes();
+        generateSchemaUpgrade();
+        generateCreateFromCursor();
+        if (options.indexedCursor){
+            generateLoadAllFromCursor();
+        }
+        generateGetContentValues();
+        generateProjections();
+        if (options.preparedStatements){
+            generateInsertStatement();
+            generateInsertBatch();
+        }
+        if (options.dirtyTracking){
+            generateDirtyTracking();
+        }
+        if (options.identityCache){
+            generateIdentityCache();
+        }
+        if (options.cursorEnumerator){
+            generateCursorEnumerator();
+        }
+    }
+
+    /**
+     * Incremental update after a property change, intended for the tracker.
+     * DB field constants are added, only the column dependent methods already present in the implementation
+     * are updated, no new method, declaration or typedef is added.
+     */
+    public void generateIncremental() {
+        final GeneratedModel code = prepare();
+        generateDbFields();
+        updateMethod("getCreateTable", code.createTable);
+        updateMethod("getCreateIndexes", code.createIndexes);
+        updateMethod("getDbContentValues", code.contentValues);
+        if (options.indexedCursor){
+            if (findDeclaration(fileDecl, code.columnsStructName) != null){
+                addTypedef(code.columnsStructName, code.columnsStruct);
+            }
+            updateMethod("bindCursorColumns:columns:", code.bindCursorColumns);
+            updateMethod("createFromCursor:columns:", code.createFromCursorIndexed);
+            updateMethod("createFromCursor:", code.createFromCursorBinding);
+        } else {
+            updateMethod("createFromCursor:", code.createFromCursor);
+        }
+        if (options.preparedStatements){
+            updateMethod("getInsertStatement", code.insertStatement);
+            updateMethod("bindToStatement:", code.bindToStatement);
         }
     }
 
-    private PsiElement addAsLast(PsiElement elem){
-        return ocClassDecl.addBefore(elem, ocClassDecl.getLastChild());
+    /**
+     * Replaces implementation of the method if the implementation already has it.
+     * @param methodName
+     * @param methodString
+     */
+    private void updateMethod(String methodName, String methodString){
+        final long start = stats.start();
+        final boolean exists = findMethod(clsImpl, methodName) != null;
+        stats.stop(GenerationStats.Phase.LOOKUP, start);
+        if (exists){
+            addMethod(methodName, null, methodString);
+        }
+    }
+
+    /**
+     * Returns true if the class interface and implementation were found and are still valid.
+     * @return
+     */
+    public boolean isValid() {
+        return clsDecl != null && clsImpl != null && fileDecl != null && fileImpl != null
+                && clsDecl.isValid() && clsImpl.isValid();
+    }
+
+    /**
+     * Detects prefix of an already generated model from its NAME_TABLE_NAME constant in the header.
+     * If there are more such constants, the closest one preceding the class interface is used.
+     * @param cls
+     * @return prefix or null if not found.
+     */
+    public static String detectPrefix(OCClassDeclaration cls) {
+        final OCInterface ocInterface = PsiUtility.getInterfaceFor(cls);
+        if (ocInterface == null){
+            return null;
+        }
+
+        final String suffix = "_TABLE_NAME";
+        final int clsOffset = ocInterface.getTextRange().getStartOffset();
+        FieldDecl best = null;
+        int bestOffset = -1;
+        for (FieldDecl fieldDecl : GlobalFieldIndex.forFile(ocInterface.getContainingFile()).getFields()) {
+            if (fieldDecl.name == null || !fieldDecl.name.endsWith(suffix)){
+                continue;
+            }
+
+            final int offset = fieldDecl.declaration.getTextRange().getStartOffset();
+            final boolean before = offset < clsOffset;
+            if (best == null || (before && (bestOffset >= clsOffset || offset > bestOffset))){
+                best = fieldDecl;
+                bestOffset = offset;
+            }
+        }
+
+        return best == null ? null : best.name.substring(0, best.name.length() - suffix.length());
     }
 
     /**
@@ -448,7 +1105,7 @@ public class DbModelBuilder {
      * @param fileImpl
      * @return
      */
-    public Map<String, FieldDecl> getAllGlobalFields(PsiFile fileImpl){
+    public static Map<String, FieldDecl> getAllGlobalFields(PsiFile fileImpl){
         HashMap<String, FieldDecl> declMap = new HashMap<String, FieldDecl>();
         if (fileImpl == null){
             return declMap;
@@ -467,23 +1124,32 @@ public class DbModelBuilder {
                 continue;
             }
 
-            for (OCDeclarator ocDeclarator : decl.getDeclarators()) {
-                final String name = ocDeclarator.getName();
-                final OCExpression initializer = ocDeclarator.getInitializer();
-                if (initializer != null) {
-                    if (!(initializer instanceof OCLiteralExpression)) {
-                        continue;
-                    }
+            collectGlobalFields(decl, declMap);
+        }
 
-                    final OCLiteralExpression ocLit = (OCLiteralExpression) initializer;
-                    declMap.put(name, new FieldDecl(name, ocLit.getRawLiteralText(), decl, ocDeclarator));
-                } else {
-                    declMap.put(name, new FieldDecl(name, null, decl, ocDeclarator));
+        return declMap;
+    }
+
+    /**
+     * Adds all declarators of the given declaration to the map, type is not checked.
+     * @param decl
+     * @param declMap
+     */
+    public static void collectGlobalFields(OCDeclaration decl, Map<String, FieldDecl> declMap){
+        for (OCDeclarator ocDeclarator : decl.getDeclarators()) {
+            final String name = ocDeclarator.getName();
+            final OCExpression initializer = ocDeclarator.getInitializer();
+            if (initializer != null) {
+                if (!(initializer instanceof OCLiteralExpression)) {
+                    continue;
                 }
+
+                final OCLiteralExpression ocLit = (OCLiteralExpression) initializer;
+                declMap.put(name, new FieldDecl(name, ocLit.getRawLiteralText(), decl, ocDeclarator));
+            } else {
+                declMap.put(name, new FieldDecl(name, null, decl, ocDeclarator));
             }
         }
-
-        return declMap;
     }
 
     /**
@@ -506,45 +1172,25 @@ public class DbModelBuilder {
     }
 
     /**
-     * Tries to find field declaration/definition in a given file.
+     * Tries to find top level declaration with given declarator name, e.g., a typedef.
      * @param file
-     * @param varName
+     * @param name
      * @return
      */
-    public static FieldDecl findField(PsiFile file, String varName) {
+    private static OCDeclaration findDeclaration(PsiFile file, String name) {
         if (file == null){
             return null;
         }
 
-        // Scan for defined declarations.
-        PsiElement[] children = file.getChildren();
-        for (PsiElement child : children) {
+        for (PsiElement child : file.getChildren()) {
             if (!(child instanceof OCDeclaration)) {
                 continue;
             }
 
             final OCDeclaration decl = (OCDeclaration) child;
-            final String cannonType = decl.getResolvedType().getCanonicalName();
-            if (!"NSString *".equalsIgnoreCase(cannonType) && !"NSString".equalsIgnoreCase(cannonType)){
-                continue;
-            }
-
             for (OCDeclarator ocDeclarator : decl.getDeclarators()) {
-                final String name = ocDeclarator.getName();
-                if (!varName.equals(name)){
-                    continue;
-                }
-
-                final OCExpression initializer = ocDeclarator.getInitializer();
-                if (initializer != null) {
-                    if (!(initializer instanceof OCLiteralExpression)) {
-                        continue;
-                    }
-
-                    final OCLiteralExpression ocLit = (OCLiteralExpression) initializer;
-                    return new FieldDecl(name, ocLit.getRawLiteralText(), decl, ocDeclarator);
-                } else {
-                    return new FieldDecl(name, null, decl, ocDeclarator);
+                if (name.equals(ocDeclarator.getName())){
+                    return decl;
                 }
             }
         }
@@ -552,6 +1198,151 @@ public class DbModelBuilder {
         return null;
     }
 
+    /**
+     * Creates builder for an already generated model class, prefix is detected from its constants.
+     * Has to be called in a read action.
+     * @param cls
+     * @param options
+     * @return builder with context set, null if prefix was not detected.
+     */
+    public static DbModelBuilder forModelClass(OCClassDeclaration cls, DbModelOptions options) {
+        final String prefix = detectPrefix(cls);
+        if (prefix == null){
+            return null;
+        }
+
+        final OCInterface ocInterface = PsiUtility.getInterfaceFor(cls);
+        final DbModelBuilder builder = new DbModelBuilder();
+        builder.setPrefix(prefix);
+        builder.setOptions(options);
+        builder.setContext(cls.getContainingFile(), cls, ocInterface == null ? cls.getProperties() : ocInterface.getProperties());
+        return builder;
+    }
+
+    public boolean isCheckOnly() {
+        return checkOnly;
+    }
+
+    public void setCheckOnly(boolean checkOnly) {
+        this.checkOnly = checkOnly;
+    }
+
+    /**
+     * Differences found in check only mode.
+     * @return
+     */
+    public List<String> getDrift() {
+        return drift;
+    }
+
+    /**
+     * Returns signature of resolved columns, changes only if a column is added, removed, renamed or retyped.
+     * @return
+     */
+    public String getColumnsSignature() {
+        StringBuilder builder = new StringBuilder();
+        for (DbColumn col : columns) {
+            builder.append(col.getSignature()).append(';');
+        }
+
+        return builder.toString();
+    }
+
+    public boolean isUpdateSchemaSnapshot() {
+        return updateSchemaSnapshot;
+    }
+
+    /**
+     * Stores the schema snapshot with added columns under a new version. Set only for explicit user actions.
+     * @param updateSchemaSnapshot
+     */
+    public void setUpdateSchemaSnapshot(boolean updateSchemaSnapshot) {
+        this.updateSchemaSnapshot = updateSchemaSnapshot;
+    }
+
+    public boolean isReplaceExisting() {
+        return replaceExisting;
+    }
+
+    public void setReplaceExisting(boolean replaceExisting) {
+        this.replaceExisting = replaceExisting;
+    }
+
+    /**
+     * Timing and counters of the generation since the last setContext.
+     * @return
+     */
+    public GenerationStats getStats() {
+        return stats;
+    }
+
+    public DbSchema getSchema() {
+        return schema;
+    }
+
+    public List<DbColumn> getColumns() {
+        return columns;
+    }
+
+    public OCClassDeclaration getClassDeclaration() {
+        return ocClassDecl;
+    }
+
+    /**
+     * Files modified by the generation, the interface and the implementation file.
+     * @return
+     */
+    public PsiFile[] getFiles() {
+        final List<PsiFile> files = new ArrayList<PsiFile>();
+        if (fileDecl != null){
+            files.add(fileDecl);
+        }
+        if (fileImpl != null && fileImpl != fileDecl){
+            files.add(fileImpl);
+        }
+
+        return files.toArray(new PsiFile[files.size()]);
+    }
+
+    public DbModelOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(DbModelOptions options) {
+        this.options = options;
+        this.typeRegistry = null;
+        this.generated = null;
+    }
+
+    /**
+     * Returns type registry, project type mappings are included once setContext was called.
+     * @return
+     */
+    public TypeRegistry getTypeRegistry() {
+        if (typeRegistry == null){
+            typeRegistry = TypeRegistry.create(options, null);
+        }
+
+        return typeRegistry;
+    }
+
+    public boolean isDeferredReformat() {
+        return deferredReformat;
+    }
+
+    public void setDeferredReformat(boolean deferredReformat) {
+        this.deferredReformat = deferredReformat;
+    }
+
+    /**
+     * Uses given batch for deferred reformatting, so more builders can share one formatter pass per file.
+     * @param reformatBatch
+     */
+    public void setReformatBatch(ReformatBatch reformatBatch) {
+        this.reformatBatch = reformatBatch;
+        this.deferredReformat = reformatBatch != null;
+    }
+
     public String getPrefix() {
         return prefix;
     }
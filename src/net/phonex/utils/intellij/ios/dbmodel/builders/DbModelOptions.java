@@ -0,0 +1,93 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+/**
+ * Holder class for generator options chosen in the generate dialog.
+ */
+public class DbModelOptions {
+    /**
+     * Cursor columns are bound to indexes once per cursor, rows are then decoded by index.
+     */
+    public boolean indexedCursor = false;
+
+    /**
+     * NSData is stored base64 encoded in TEXT column, as in existing schemas.
+     * BLOB is opt-in for new tables, it needs getBlob: of PEXDbCursor and put:blob: of PEXDbContentValues.
+     */
+    public boolean legacyBase64Data = true;
+
+    /**
+     * Generates getFullProjection, all table columns in the order of properties.
+     */
+    public boolean fullProjection = false;
+
+    /**
+     * Named sub-projections, e.g., "list: title, date; detail: title, body".
+     * Each gets a projection array and a loader decoding only its columns.
+     */
+    public String projections = "";
+
+    /**
+     * Generated setters mark changed columns in a per-instance bitset, getDirtyContentValues packs only those.
+     */
+    public boolean dirtyTracking = false;
+
+    /**
+     * Property used as primary key. Empty for the identifier column, an INTEGER PRIMARY KEY alias of rowid.
+     * Other property makes a natural key table.
+     */
+    public String primaryKey = "";
+
+    /**
+     * Identifier primary key uses AUTOINCREMENT, ids are never reused at the cost of a sqlite_sequence write per insert.
+     */
+    public boolean autoincrement = true;
+
+    /**
+     * Table is created WITHOUT ROWID, requires natural primary key, ignored for the identifier primary key.
+     */
+    public boolean withoutRowid = false;
+
+    /**
+     * Columns of mapped scalar types with INTEGER or REAL affinity are NOT NULL with DEFAULT 0.
+     */
+    public boolean notNullPrimitives = false;
+
+    /**
+     * Generates sqlite3 prepared statement insert path and batch insert, the implementation file imports sqlite3.h then.
+     */
+    public boolean preparedStatements = false;
+
+    /**
+     * Loaded objects are kept in an NSCache identity map by id, loadById: returns cached instances.
+     */
+    public boolean identityCache = false;
+
+    /**
+     * NSCache total cost limit of the identity map in bytes, each object costs its estimated memory.
+     */
+    public int identityCacheCostLimit = 1024 * 1024;
+
+    /**
+     * Generates lazy cursor enumerator decoding rows on demand, optionally refilling a single instance.
+     */
+    public boolean cursorEnumerator = false;
+
+    @Override
+    public String toString() {
+        return "DbModelOptions{" +
+                "indexedCursor=" + indexedCursor +
+                ", legacyBase64Data=" + legacyBase64Data +
+                ", fullProjection=" + fullProjection +
+                ", projections='" + projections + '\'' +
+                ", dirtyTracking=" + dirtyTracking +
+                ", primaryKey='" + primaryKey + '\'' +
+                ", autoincrement=" + autoincrement +
+                ", withoutRowid=" + withoutRowid +
+                ", notNullPrimitives=" + notNullPrimitives +
+                ", preparedStatements=" + preparedStatements +
+                ", identityCache=" + identityCache +
+                ", identityCacheCostLimit=" + identityCacheCostLimit +
+                ", cursorEnumerator=" + cursorEnumerator +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PSI independent model of a DB table, extracted from class properties.
+ */
+public class DbSchema {
+    public final String className;
+    public final String prefix;
+    public final List<DbColumn> columns;
+
+    private String signature;
+
+    public DbSchema(String className, String prefix, List<DbColumn> columns) {
+        this.className = className;
+        this.prefix = prefix;
+        this.columns = Collections.unmodifiableList(columns);
+    }
+
+    public String getTableNameField() {
+        return prefix + "_TABLE_NAME";
+    }
+
+    public String getIdFieldName() {
+        return prefix + "_FIELD_ID";
+    }
+
+    /**
+     * Signature identifying the schema, used as a cache key.
+     * @return
+     */
+    public String getSignature() {
+        if (signature != null){
+            return signature;
+        }
+
+        StringBuilder builder = new StringBuilder(className).append('|').append(prefix).append('|');
+        for (DbColumn col : columns) {
+            builder.append(col.getSignature()).append(';');
+        }
+
+        signature = builder.toString();
+        return signature;
+    }
+
+    @Override
+    public String toString() {
+        return "DbSchema{" +
+                "className='" + className + '\'' +
+                ", prefix='" + prefix + '\'' +
+                ", columns=" + columns +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+/**
+ * Holder class for a generated method: selector, declaration for the interface and implementation.
+ */
+public class GeneratedMethod {
+    public final String selector;
+    public final String declaration;
+    public final String implementation;
+
+    public GeneratedMethod(String selector, String declaration, String implementation) {
+        this.selector = selector;
+        this.declaration = declaration;
+        this.implementation = implementation;
+    }
+}
@@ -0,0 +1,32 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holder class for the code generated from a schema, ready to be inserted to PSI.
+ */
+public class GeneratedModel {
+    public String columnsStructName;
+    public String createTable;
+    public String createIndexes;
+    public String createFromCursor;
+    public String columnsStruct;
+    public String bindCursorColumns;
+    public String createFromCursorIndexed;
+    public String createFromCursorBinding;
+    public String loadAllFromCursor;
+    public String contentValues;
+    public String insertStatement;
+    public String bindToStatement;
+    public String insertBatch;
+    public String fullProjection;
+    public List<GeneratedMethod> projections = new ArrayList<GeneratedMethod>();
+    public String dirtyExtension;
+    public List<GeneratedMethod> dirtyMethods = new ArrayList<GeneratedMethod>();
+    public List<GeneratedMethod> identityCacheMethods = new ArrayList<GeneratedMethod>();
+    public String cursorEnumeratorName;
+    public String cursorEnumeratorInterface;
+    public String cursorEnumeratorImplementation;
+    public List<GeneratedMethod> cursorEnumeratorMethods = new ArrayList<GeneratedMethod>();
+}
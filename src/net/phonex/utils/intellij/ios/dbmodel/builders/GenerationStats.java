@@ -0,0 +1,131 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+/**
+ * Timing and counters of a single DB model generation, collected per phase.
+ */
+public class GenerationStats {
+    public enum Phase {
+        RESOLVE("resolve"),
+        GENERATE("generate"),
+        LOOKUP("lookup"),
+        PARSE("parse"),
+        INSERT("insert"),
+        REFORMAT("reformat");
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private final long timestamp = System.currentTimeMillis();
+    private final long[] nanos = new long[Phase.values().length];
+    private String className;
+    private int declarators;
+    private int insertedElements;
+    private int skippedElements;
+    private int reformatCalls;
+
+    public GenerationStats() {
+    }
+
+    public GenerationStats(String className) {
+        this.className = className;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds time elapsed since start to the phase.
+     * @param phase
+     * @param start value returned by start()
+     */
+    public void stop(Phase phase, long start) {
+        nanos[phase.ordinal()] += System.nanoTime() - start;
+    }
+
+    /**
+     * Adds time measured elsewhere, e.g., share of a reformat pass over files of more models.
+     * @param phase
+     * @param elapsed nanoseconds.
+     */
+    public void addNanos(Phase phase, long elapsed) {
+        nanos[phase.ordinal()] += elapsed;
+    }
+
+    public long getMillis(Phase phase) {
+        return nanos[phase.ordinal()] / 1000000L;
+    }
+
+    public long getTotalMillis() {
+        long total = 0;
+        for (long phaseNanos : nanos) {
+            total += phaseNanos;
+        }
+
+        return total / 1000000L;
+    }
+
+    public void elementInserted() {
+        insertedElements += 1;
+    }
+
+    public void elementSkipped() {
+        skippedElements += 1;
+    }
+
+    public void reformatted(int calls) {
+        reformatCalls += calls;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public int getDeclarators() {
+        return declarators;
+    }
+
+    public void setDeclarators(int declarators) {
+        this.declarators = declarators;
+    }
+
+    public int getInsertedElements() {
+        return insertedElements;
+    }
+
+    public int getSkippedElements() {
+        return skippedElements;
+    }
+
+    public int getReformatCalls() {
+        return reformatCalls;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(className).append(": ")
+                .append(declarators).append(" declarators, ")
+                .append(insertedElements).append(" inserted, ")
+                .append(skippedElements).append(" up to date, ")
+                .append(reformatCalls).append(" reformat calls; ");
+
+        for (Phase phase : Phase.values()) {
+            builder.append(phase.label).append(' ').append(getMillis(phase)).append(" ms, ");
+        }
+
+        return builder.append("total ").append(getTotalMillis()).append(" ms").toString();
+    }
+}
@@ -0,0 +1,74 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiFile;
+import com.jetbrains.cidr.lang.psi.OCDeclaration;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of globally defined NSString fields in a file.
+ * Index is cached on the file and rebuilt only when the PSI modification stamp changes.
+ */
+public class GlobalFieldIndex {
+    private static final Key<GlobalFieldIndex> INDEX_KEY = Key.create("net.phonex.dbmodel.GlobalFieldIndex");
+
+    private final PsiFile file;
+    private final Map<String, FieldDecl> fields;
+    private long stamp;
+
+    private GlobalFieldIndex(PsiFile file, Map<String, FieldDecl> fields) {
+        this.file = file;
+        this.fields = fields;
+        this.stamp = file == null ? -1 : file.getModificationStamp();
+    }
+
+    /**
+     * Returns index for the given file, scans the file only if it was modified since the last scan.
+     * @param file
+     * @return
+     */
+    public static GlobalFieldIndex forFile(PsiFile file) {
+        if (file == null){
+            return new GlobalFieldIndex(null, new HashMap<String, FieldDecl>());
+        }
+
+        GlobalFieldIndex index = file.getUserData(INDEX_KEY);
+        if (index != null && index.stamp == file.getModificationStamp()){
+            return index;
+        }
+
+        index = new GlobalFieldIndex(file, DbModelBuilder.getAllGlobalFields(file));
+        file.putUserData(INDEX_KEY, index);
+        return index;
+    }
+
+    public FieldDecl get(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * Registers newly inserted NSString declaration so the file does not have to be rescanned.
+     * @param decl
+     */
+    public void register(OCDeclaration decl) {
+        if (decl == null){
+            return;
+        }
+
+        DbModelBuilder.collectGlobalFields(decl, fields);
+        if (file != null){
+            stamp = file.getModificationStamp();
+        }
+    }
+
+    public Collection<FieldDecl> getFields() {
+        return fields.values();
+    }
+
+    public int size() {
+        return fields.size();
+    }
+}
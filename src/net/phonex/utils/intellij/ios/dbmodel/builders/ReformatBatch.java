@@ -0,0 +1,163 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.SmartPointerManager;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+
+import java.util.*;
+
+/**
+ * Collects inserted elements per file and reformats them in one pass per file.
+ * Elements are tracked by smart pointers so later insertions do not invalidate their ranges.
+ * Formatter calls and time are recorded in stats of the generations that inserted into the file,
+ * time of a shared pass is split evenly between them.
+ */
+public class ReformatBatch {
+    private static final Logger LOG = Logger.getInstance(ReformatBatch.class);
+
+    private final Project project;
+    private final Map<PsiFile, List<SmartPsiElementPointer<PsiElement>>> elements = new LinkedHashMap<PsiFile, List<SmartPsiElementPointer<PsiElement>>>();
+    private final Map<PsiFile, Set<GenerationStats>> owners = new HashMap<PsiFile, Set<GenerationStats>>();
+
+    public ReformatBatch(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Adds element to be reformatted.
+     * @param elem
+     * @param stats generation the element belongs to, reformatting of its file is recorded there, may be null.
+     */
+    public void add(PsiElement elem, GenerationStats stats) {
+        if (elem == null){
+            return;
+        }
+
+        final PsiFile file = elem.getContainingFile();
+        List<SmartPsiElementPointer<PsiElement>> fileElements = elements.get(file);
+        if (fileElements == null){
+            fileElements = new ArrayList<SmartPsiElementPointer<PsiElement>>();
+            elements.put(file, fileElements);
+        }
+
+        fileElements.add(SmartPointerManager.getInstance(project).createSmartPsiElementPointer(elem));
+        if (stats != null){
+            Set<GenerationStats> fileOwners = owners.get(file);
+            if (fileOwners == null){
+                fileOwners = new LinkedHashSet<GenerationStats>();
+                owners.put(file, fileOwners);
+            }
+
+            fileOwners.add(stats);
+        }
+    }
+
+    /**
+     * Reformats all collected ranges, one formatter pass per file.
+     * Document of the file is committed first, so the formatter sees all the PSI changes.
+     * @return number of formatter passes.
+     */
+    public int flush() {
+        int passes = 0;
+        final CodeStyleManager codeStyleManager = CodeStyleManager.getInstance(project);
+        final PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+        for (Map.Entry<PsiFile, List<SmartPsiElementPointer<PsiElement>>> entry : elements.entrySet()) {
+            final PsiFile file = entry.getKey();
+            if (file == null || !file.isValid()){
+                continue;
+            }
+
+            final Document document = documentManager.getDocument(file);
+            if (document != null){
+                documentManager.doPostponedOperationsAndUnblockDocument(document);
+                documentManager.commitDocument(document);
+            }
+
+            final List<TextRange> ranges = mergeRanges(entry.getValue());
+            if (ranges.isEmpty()){
+                continue;
+            }
+
+            LOG.info(String.format("Reformatting %d ranges in %s", ranges.size(), file.getName()));
+            final long start = System.nanoTime();
+            codeStyleManager.reformatText(file, ranges);
+            record(owners.get(file), System.nanoTime() - start);
+            passes += 1;
+        }
+
+        elements.clear();
+        owners.clear();
+        return passes;
+    }
+
+    /**
+     * Records one formatter pass in stats of all the generations inserting into the file.
+     * @param fileOwners
+     * @param nanos duration of the pass.
+     */
+    private static void record(Set<GenerationStats> fileOwners, long nanos) {
+        if (fileOwners == null || fileOwners.isEmpty()){
+            return;
+        }
+
+        final long share = nanos / fileOwners.size();
+        for (GenerationStats stats : fileOwners) {
+            stats.reformatted(1);
+            stats.addNanos(GenerationStats.Phase.REFORMAT, share);
+        }
+    }
+
+    public boolean isEmpty() {
+        return elements.isEmpty();
+    }
+
+    /**
+     * Converts pointers to sorted, non-overlapping text ranges.
+     * @param pointers
+     * @return
+     */
+    private static List<TextRange> mergeRanges(List<SmartPsiElementPointer<PsiElement>> pointers) {
+        final List<TextRange> ranges = new ArrayList<TextRange>();
+        for (SmartPsiElementPointer<PsiElement> pointer : pointers) {
+            final PsiElement elem = pointer.getElement();
+            if (elem == null || !elem.isValid()){
+                continue;
+            }
+
+            ranges.add(elem.getTextRange());
+        }
+
+        Collections.sort(ranges, new Comparator<TextRange>() {
+            @Override
+            public int compare(TextRange o1, TextRange o2) {
+                return o1.getStartOffset() - o2.getStartOffset();
+            }
+        });
+
+        final List<TextRange> merged = new ArrayList<TextRange>();
+        TextRange cur = null;
+        for (TextRange range : ranges) {
+            if (cur == null){
+                cur = range;
+            } else if (range.getStartOffset() <= cur.getEndOffset() + 1){
+                cur = cur.union(range);
+            } else {
+                merged.add(cur);
+                cur = range;
+            }
+        }
+
+        if (cur != null){
+            merged.add(cur);
+        }
+
+        return merged;
+    }
+}
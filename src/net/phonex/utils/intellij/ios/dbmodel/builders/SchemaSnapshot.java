@@ -0,0 +1,120 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.xmlb.annotations.AbstractCollection;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Snapshot of the model table columns as of the last generation, with schema version each column was added in.
+ * Public fields & default constructor so the snapshot can be stored in project settings.
+ */
+public class SchemaSnapshot {
+    private static final Logger LOG = Logger.getInstance(SchemaSnapshot.class);
+    public static final int FIRST_VERSION = 1;
+
+    public String className;
+    public int version = FIRST_VERSION;
+
+    @AbstractCollection(surroundWithTag = false, elementTag = "column")
+    public List<SnapshotColumn> columns = new ArrayList<SnapshotColumn>();
+
+    /**
+     * Diffs the schema against the previous snapshot and returns the new snapshot.
+     * Added columns get a new version, removed columns are only marked as removed since SQLite cannot drop them.
+     * Without previous snapshot all columns belong to the first version.
+     * @param previous previous snapshot, may be null.
+     * @param schema
+     * @param typeRegistry
+     * @return new snapshot, previous one is not modified.
+     */
+    public static SchemaSnapshot update(SchemaSnapshot previous, DbSchema schema, TypeRegistry typeRegistry) {
+        final SchemaSnapshot snapshot = new SchemaSnapshot();
+        snapshot.className = schema.className;
+        snapshot.version = previous == null ? FIRST_VERSION : previous.version;
+
+        final int newVersion = previous == null ? FIRST_VERSION : previous.version + 1;
+        final Set<String> current = new HashSet<String>();
+        boolean added = false;
+        for (DbColumn col : schema.columns) {
+            if (schema.getIdFieldName().equals(col.fieldName)){
+                continue;
+            }
+
+            current.add(col.name);
+            final TypeMapping mapping = typeRegistry.get(col);
+            final String sqlType = mapping == null ? "TEXT" : mapping.sqlType;
+            final SnapshotColumn prevCol = previous == null ? null : previous.getColumn(col.name);
+            if (prevCol == null){
+                snapshot.columns.add(new SnapshotColumn(col.name, col.fieldName, col.typeName, sqlType, newVersion));
+                added = true;
+                continue;
+            }
+
+            if (!sqlType.equals(prevCol.sqlType)){
+                LOG.warn(String.format("%s.%s changed SQL type from %s to %s, ALTER TABLE cannot migrate it",
+                        schema.className, col.name, prevCol.sqlType, sqlType));
+            }
+
+            // Re-added column still exists in upgraded databases, no new version needed.
+            final SnapshotColumn snapshotCol = new SnapshotColumn(col.name, col.fieldName, col.typeName, prevCol.sqlType, prevCol.version);
+            snapshot.columns.add(snapshotCol);
+        }
+
+        if (previous != null){
+            for (SnapshotColumn prevCol : previous.columns) {
+                if (current.contains(prevCol.name)){
+                    continue;
+                }
+
+                final SnapshotColumn removedCol = new SnapshotColumn(prevCol.name, prevCol.fieldName, prevCol.typeName, prevCol.sqlType, prevCol.version);
+                removedCol.removed = true;
+                snapshot.columns.add(removedCol);
+            }
+        }
+
+        if (added){
+            snapshot.version = newVersion;
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Columns added in the given version, including removed ones.
+     * @param version
+     * @return
+     */
+    public List<SnapshotColumn> getColumnsAddedIn(int version) {
+        final List<SnapshotColumn> added = new ArrayList<SnapshotColumn>();
+        for (SnapshotColumn column : columns) {
+            if (column.version == version){
+                added.add(column);
+            }
+        }
+
+        return added;
+    }
+
+    public SnapshotColumn getColumn(String name) {
+        for (SnapshotColumn column : columns) {
+            if (column.name.equals(name)){
+                return column;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "SchemaSnapshot{" +
+                "className='" + className + '\'' +
+                ", version=" + version +
+                ", columns=" + columns +
+                '}';
+    }
+}
@@ -0,0 +1,52 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+/**
+ * Column of a schema snapshot, stored in project settings.
+ * Public fields & default constructor so the column can be stored in project settings.
+ */
+public class SnapshotColumn {
+    public String name;
+    public String fieldName;
+    public String typeName;
+    public String sqlType;
+
+    /**
+     * Schema version the column was added in.
+     */
+    public int version;
+
+    /**
+     * Property was removed, column stays in existing databases.
+     */
+    public boolean removed = false;
+
+    public SnapshotColumn() {
+    }
+
+    public SnapshotColumn(String name, String fieldName, String typeName, String sqlType, int version) {
+        this.name = name;
+        this.fieldName = fieldName;
+        this.typeName = typeName;
+        this.sqlType = sqlType;
+        this.version = version;
+    }
+
+    /**
+     * Returns true if the column holds a scalar value with INTEGER or REAL affinity, may be NOT NULL DEFAULT 0.
+     * @return
+     */
+    public boolean isScalar() {
+        return typeName != null && !typeName.trim().endsWith("*") && DbCodeGenerator.getZeroDefault(sqlType) != null;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotColumn{" +
+                "name='" + name + '\'' +
+                ", typeName='" + typeName + '\'' +
+                ", sqlType='" + sqlType + '\'' +
+                ", version=" + version +
+                ", removed=" + removed +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+/**
+ * Mapping of ObjC canonical type to SQL affinity, cursor getter, content values putter and sqlite3 binder.
+ * Getter is an expression template, $idx is replaced with column index expression.
+ * Binder is a statement template, $stmt, $idx and $value are replaced with the statement, parameter index and value.
+ * Public fields & default constructor so the mapping can be stored in project settings.
+ */
+public class TypeMapping {
+    public static final String IDX = "$idx";
+    public static final String STMT = "$stmt";
+    public static final String VALUE = "$value";
+
+    public String type;
+    public String sqlType;
+    public String getter;
+    public String putter;
+
+    /**
+     * Optional, derived from the putter if not set. Properties without binder are bound as NULL.
+     */
+    public String binder;
+
+    public TypeMapping() {
+    }
+
+    public TypeMapping(String type, String sqlType, String getter, String putter) {
+        this(type, sqlType, getter, putter, null);
+    }
+
+    public TypeMapping(String type, String sqlType, String getter, String putter, String binder) {
+        this.type = type;
+        this.sqlType = sqlType;
+        this.getter = getter;
+        this.putter = putter;
+        this.binder = binder;
+    }
+
+    /**
+     * Returns cursor getter expression for the given column index expression.
+     * @param idx
+     * @return
+     */
+    public String getterFor(String idx) {
+        return getter.replace(IDX, idx);
+    }
+
+    /**
+     * Returns sqlite3 bind statement for the given statement, parameter index and value expressions.
+     * @param stmt
+     * @param idx
+     * @param value
+     * @return bind statement or null if the mapping has no binder.
+     */
+    public String binderFor(String stmt, String idx, String value) {
+        if (binder == null){
+            return null;
+        }
+
+        return binder.replace(STMT, stmt).replace(IDX, idx).replace(VALUE, value);
+    }
+
+    @Override
+    public String toString() {
+        return "TypeMapping{" +
+                "type='" + type + '\'' +
+                ", sqlType='" + sqlType + '\'' +
+                ", getter='" + getter + '\'' +
+                ", putter='" + putter + '\'' +
+                ", binder='" + binder + '\'' +
+                '}';
+    }
+}
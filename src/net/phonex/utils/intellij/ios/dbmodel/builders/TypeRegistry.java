@@ -0,0 +1,179 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Registry of ObjC type mappings shared by all generators, keyed by normalized canonical type name.
+ * Built-in mappings can be overridden or extended by project mappings.
+ */
+public class TypeRegistry {
+    private static final Logger LOG = Logger.getInstance(TypeRegistry.class);
+
+    /**
+     * sqlite3 binder per content values putter, so prepared statements store the same representation
+     * as getDbContentValues and the getter reads both back the same way.
+     * NSDate is bound as the NSTimeInterval since 1970 put:date: stores and getDateFromCursor:idx: reads.
+     */
+    private static final Map<String, String> PUTTER_BINDERS = new HashMap<String, String>();
+    static {
+        PUTTER_BINDERS.put("string", "sqlite3_bind_text($stmt, $idx, [$value UTF8String], -1, SQLITE_TRANSIENT)");
+        PUTTER_BINDERS.put("number", "sqlite3_bind_int64($stmt, $idx, [$value longLongValue])");
+        PUTTER_BINDERS.put("NSNumberAsLongLong", "sqlite3_bind_int64($stmt, $idx, [$value longLongValue])");
+        PUTTER_BINDERS.put("date", "sqlite3_bind_double($stmt, $idx, [$value timeIntervalSince1970])");
+        PUTTER_BINDERS.put("integer", "sqlite3_bind_int64($stmt, $idx, (sqlite3_int64) $value)");
+        PUTTER_BINDERS.put("double", "sqlite3_bind_double($stmt, $idx, $value)");
+        PUTTER_BINDERS.put("data", "sqlite3_bind_text($stmt, $idx, [[$value base64EncodedStringWithOptions:0] UTF8String], -1, SQLITE_TRANSIENT)");
+        PUTTER_BINDERS.put("blob", "sqlite3_bind_blob($stmt, $idx, [$value bytes], (int) [$value length], SQLITE_TRANSIENT)");
+    }
+
+    private static final TypeMapping STRING = builtIn("NSString *", "TEXT", "[c getString:$idx]", "string");
+
+    private final Map<String, TypeMapping> mappings = new HashMap<String, TypeMapping>();
+    private boolean putNullSupported = false;
+    private String signature;
+
+    /**
+     * Creates registry with built-in mappings for the given options, project mappings take precedence.
+     * @param options may be null, NSData is stored as base64 TEXT then.
+     * @param projectMappings may be null.
+     * @return
+     */
+    public static TypeRegistry create(DbModelOptions options, Collection<TypeMapping> projectMappings) {
+        return create(options == null || options.legacyBase64Data, projectMappings);
+    }
+
+    /**
+     * Creates registry with built-in mappings, project mappings take precedence.
+     * @param legacyBase64Data NSData is stored as base64 TEXT if set, as BLOB otherwise.
+     * @param projectMappings may be null.
+     * @return
+     */
+    public static TypeRegistry create(boolean legacyBase64Data, Collection<TypeMapping> projectMappings) {
+        final TypeRegistry registry = new TypeRegistry();
+        registry.put(STRING);
+        registry.put(builtIn("NSMutableString *", "TEXT", "[c getString:$idx]", "string"));
+        registry.put(builtIn("NSNumber *", "INTEGER", "[c getInt:$idx]", "number"));
+        registry.put(builtIn("NSDate *", "INTEGER", "[PEXDbModelBase getDateFromCursor:c idx:$idx]", "date"));
+        registry.put(builtIn("BOOL", "INTEGER", "[[c getInt:$idx] boolValue]", "integer"));
+        registry.put(builtIn("int", "INTEGER", "[[c getInt:$idx] integerValue]", "integer"));
+        registry.put(builtIn("double", "REAL", "[[c getDouble:$idx] doubleValue]", "double"));
+        if (legacyBase64Data){
+            registry.put(builtIn("NSData *", "TEXT", "[[NSData alloc] initWithBase64EncodedData:[c getString:$idx] options:0]", "data"));
+            registry.put(builtIn("NSMutableData *", "TEXT", "[[NSData alloc] initWithBase64EncodedData:[c getString:$idx] options:0]", "data"));
+        } else {
+            registry.put(builtIn("NSData *", "BLOB", "[c getBlob:$idx]", "blob"));
+            registry.put(builtIn("NSMutableData *", "BLOB", "[c getBlob:$idx]", "blob"));
+        }
+
+        if (projectMappings != null){
+            for (TypeMapping mapping : projectMappings) {
+                if (mapping.type == null || mapping.sqlType == null || mapping.getter == null || mapping.putter == null){
+                    LOG.warn("Incomplete type mapping ignored: " + mapping);
+                    continue;
+                }
+
+                // Without explicit binder the value is bound as the putter stores it.
+                registry.put(mapping.binder != null ? mapping
+                        : new TypeMapping(mapping.type, mapping.sqlType, mapping.getter, mapping.putter, getBinderForPutter(mapping.putter)));
+            }
+        }
+
+        return registry;
+    }
+
+    private static TypeMapping builtIn(String type, String sqlType, String getter, String putter) {
+        return new TypeMapping(type, sqlType, getter, putter, getBinderForPutter(putter));
+    }
+
+    /**
+     * Returns sqlite3 binder template storing the value in the same representation as the content values putter.
+     * @param putter content values put method name, e.g., "string" for put:string:
+     * @return binder template or null for unknown putter.
+     */
+    public static String getBinderForPutter(String putter) {
+        return putter == null ? null : PUTTER_BINDERS.get(putter);
+    }
+
+    public void put(TypeMapping mapping) {
+        mappings.put(normalize(mapping.type), mapping);
+        signature = null;
+    }
+
+    /**
+     * Returns true if PEXDbContentValues has putNull:, so nil values can be stored as NULL.
+     * @return
+     */
+    public boolean isPutNullSupported() {
+        return putNullSupported;
+    }
+
+    public void setPutNullSupported(boolean putNullSupported) {
+        this.putNullSupported = putNullSupported;
+        signature = null;
+    }
+
+    /**
+     * Signature of all mappings, used as a cache key.
+     * @return
+     */
+    public String getSignature() {
+        if (signature != null){
+            return signature;
+        }
+
+        final StringBuilder builder = new StringBuilder("putNull=" + putNullSupported + ';');
+        for (String key : new TreeSet<String>(mappings.keySet())) {
+            builder.append(mappings.get(key)).append(';');
+        }
+
+        signature = builder.toString();
+        return signature;
+    }
+
+    /**
+     * Returns mapping for the column type. Unknown string compatible types are mapped as NSString.
+     * @param col
+     * @return mapping or null if type is unknown.
+     */
+    public TypeMapping get(DbColumn col) {
+        final TypeMapping mapping = mappings.get(normalize(col.typeName));
+        if (mapping != null){
+            return mapping;
+        }
+
+        if (col.stringCompatible){
+            return STRING;
+        }
+
+        LOG.warn(String.format("No type mapping for column %s, type=%s", col.name, col.typeName));
+        return null;
+    }
+
+    /**
+     * Returns true for NSData and NSMutableData, stored either as base64 TEXT or as BLOB.
+     * @param type canonical type name.
+     * @return
+     */
+    public static boolean isDataType(String type) {
+        final String normalized = normalize(type);
+        return "nsdata*".equals(normalized) || "nsmutabledata*".equals(normalized);
+    }
+
+    /**
+     * Normalizes canonical type name so that e.g. "NSString*" and "nsstring *" share the key.
+     * @param type
+     * @return
+     */
+    public static String normalize(String type) {
+        if (type == null){
+            return "";
+        }
+
+        return type.replaceAll("\\s+", "").toLowerCase();
+    }
+}
@@ -0,0 +1,178 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarterEx;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.util.Computable;
+import com.jetbrains.cidr.lang.psi.OCInterface;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.settings.DbModelSettings;
+import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
+
+import java.util.*;
+
+/**
+ * Headless regeneration of DB models, e.g., for CI.
+ *
+ * Usage: dbmodel &lt;project path&gt; [--check] [ClassName ...]
+ *
+ * Without class names all model classes matching the project settings are processed.
+ * In check mode no file is modified and exit code is 1 if generated code differs from the sources.
+ * Exit code 2 signals usage or processing error.
+ */
+public class DbModelRegenerateStarter extends ApplicationStarterEx {
+    private static final String COMMAND = "dbmodel";
+    private static final String CHECK = "--check";
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_DRIFT = 1;
+    private static final int EXIT_ERROR = 2;
+
+    @Override
+    public String getCommandName() {
+        return COMMAND;
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void premain(String[] args) {
+        if (args.length < 2){
+            System.err.println("Usage: " + COMMAND + " <project path> [" + CHECK + "] [ClassName ...]");
+            System.exit(EXIT_ERROR);
+        }
+    }
+
+    @Override
+    public void main(String[] args) {
+        int exitCode;
+        try {
+            exitCode = run(args);
+        } catch(Throwable t){
+            t.printStackTrace(System.err);
+            exitCode = EXIT_ERROR;
+        }
+
+        System.exit(exitCode);
+    }
+
+    private int run(String[] args) throws Exception {
+        final String projectPath = args[1];
+        boolean checkOnly = false;
+        final Set<String> classNames = new HashSet<String>();
+        for (int i = 2; i < args.length; i++) {
+            if (CHECK.equals(args[i])){
+                checkOnly = true;
+            } else {
+                classNames.add(args[i]);
+            }
+        }
+
+        final Project project = ProjectManagerEx.getInstanceEx().loadAndOpenProject(projectPath);
+        if (project == null){
+            System.err.println("Cannot open project " + projectPath);
+            return EXIT_ERROR;
+        }
+
+        DumbService.getInstance(project).waitForSmartMode();
+        final DbModelSettings settings = DbModelSettings.getInstance(project);
+        final List<OCInterface> classes = ApplicationManager.getApplication().runReadAction(new Computable<List<OCInterface>>() {
+            @Override
+            public List<OCInterface> compute() {
+                return PsiUtility.findModelClasses(project, settings.modelSuperClass, settings.modelMarker);
+            }
+        });
+
+        int processed = 0;
+        int drift = 0;
+        int errors = 0;
+        final long runStart = System.nanoTime();
+        for (final OCInterface cls : classes) {
+            final String cName = ApplicationManager.getApplication().runReadAction(new Computable<String>() {
+                @Override
+                public String compute() {
+                    return cls.getName();
+                }
+            });
+
+            if (!classNames.isEmpty() && !classNames.contains(cName)){
+                continue;
+            }
+
+            processed += 1;
+            final long start = System.nanoTime();
+            final DbModelBuilder builder = ApplicationManager.getApplication().runReadAction(new Computable<DbModelBuilder>() {
+                @Override
+                public DbModelBuilder compute() {
+                    return DbModelBuilder.forModelClass(cls, settings.getOptionsFor(cls.getName()));
+                }
+            });
+
+            if (builder == null || !builder.isValid()){
+                System.out.println(cName + ": ERROR, prefix or implementation not found");
+                errors += 1;
+                continue;
+            }
+
+            builder.setCheckOnly(checkOnly);
+            if (checkOnly){
+                ApplicationManager.getApplication().runReadAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        builder.generateAll();
+                    }
+                });
+            } else {
+                new WriteCommandAction.Simple(project, builder.getFiles()) {
+                    @Override
+                    protected void run() throws Throwable {
+                        builder.setDeferredReformat(true);
+                        builder.setUpdateSchemaSnapshot(true);
+                        builder.generateAll();
+                        builder.flushReformat();
+                    }
+                }.execute();
+            }
+
+            final long millis = (System.nanoTime() - start) / 1000000L;
+            GenerationStatsHistory.getInstance(project).record(builder.getStats());
+            if (builder.getDrift().isEmpty()){
+                System.out.println(String.format("%s: OK, %d columns, %d ms", cName, builder.getColumns().size(), millis));
+            } else {
+                System.out.println(String.format("%s: DRIFT, %d columns, %d ms", cName, builder.getColumns().size(), millis));
+                for (String msg : builder.getDrift()) {
+                    System.out.println("    " + msg);
+                }
+                drift += 1;
+            }
+        }
+
+        if (!checkOnly){
+            ApplicationManager.getApplication().invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    FileDocumentManager.getInstance().saveAllDocuments();
+                    project.save();
+                }
+            }, ModalityState.defaultModalityState());
+        }
+
+        System.out.println(String.format("Total: %d classes, %d with drift, %d errors, %d ms",
+                processed, drift, errors, (System.nanoTime() - runStart) / 1000000L));
+
+        ProjectManagerEx.getInstanceEx().closeAndDispose(project);
+        if (errors > 0){
+            return EXIT_ERROR;
+        }
+
+        return drift > 0 ? EXIT_DRIFT : EXIT_OK;
+    }
+}
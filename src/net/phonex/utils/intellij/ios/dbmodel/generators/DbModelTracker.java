@@ -0,0 +1,202 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.components.AbstractProjectComponent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.ui.update.MergingUpdateQueue;
+import com.intellij.util.ui.update.Update;
+import com.jetbrains.cidr.lang.psi.OCClassDeclaration;
+import com.jetbrains.cidr.lang.psi.OCInterface;
+import com.jetbrains.cidr.lang.psi.OCProperty;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
+import net.phonex.utils.intellij.ios.dbmodel.settings.DbModelSettings;
+import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Watches property changes of classes generated in this session and updates their DB model code.
+ * Updates are debounced and coalesced per class, nothing is written if the columns did not change
+ * or the model files have syntax errors. Only field constants and existing column dependent methods are updated.
+ * Enabled by DbModelSettings.incrementalRegeneration.
+ * Schema snapshot is not updated, schema version is bumped only by an explicit generation.
+ */
+public class DbModelTracker extends AbstractProjectComponent {
+    private static final Logger LOG = Logger.getInstance(DbModelTracker.class);
+    private static final int DEBOUNCE_MS = 1500;
+
+    private final Map<String, TrackedClass> tracked = new HashMap<String, TrackedClass>();
+    private MergingUpdateQueue queue;
+
+    // Set while the tracker writes, own changes are not processed.
+    private boolean updating = false;
+
+    /**
+     * Holder class for the class generated in this session.
+     */
+    private static class TrackedClass {
+        final SmartPsiElementPointer<OCClassDeclaration> cls;
+        final String prefix;
+        final DbModelOptions options;
+        String signature;
+
+        TrackedClass(SmartPsiElementPointer<OCClassDeclaration> cls, String prefix, DbModelOptions options, String signature) {
+            this.cls = cls;
+            this.prefix = prefix;
+            this.options = options;
+            this.signature = signature;
+        }
+    }
+
+    public DbModelTracker(Project project) {
+        super(project);
+    }
+
+    public static DbModelTracker getInstance(Project project) {
+        return project.getComponent(DbModelTracker.class);
+    }
+
+    @Override
+    public void projectOpened() {
+        queue = new MergingUpdateQueue("PhoneX DB model update", DEBOUNCE_MS, true, null, myProject);
+        PsiManager.getInstance(myProject).addPsiTreeChangeListener(new PropertyListener(), myProject);
+    }
+
+    @NotNull
+    @Override
+    public String getComponentName() {
+        return "PhoneXDbModelTracker";
+    }
+
+    /**
+     * Registers class generated by the builder for incremental updates.
+     * @param builder
+     */
+    public void track(DbModelBuilder builder) {
+        final OCClassDeclaration cls = builder.getClassDeclaration();
+        final SmartPsiElementPointer<OCClassDeclaration> pointer = SmartPointerManager.getInstance(myProject).createSmartPsiElementPointer(cls);
+        tracked.put(cls.getName(), new TrackedClass(pointer, builder.getPrefix(), builder.getOptions(), builder.getColumnsSignature()));
+    }
+
+    private void scheduleUpdate(final String cName) {
+        if (queue == null){
+            return;
+        }
+
+        queue.queue(new Update(cName) {
+            @Override
+            public void run() {
+                if (DumbService.getInstance(myProject).isDumb()){
+                    scheduleUpdate(cName);
+                    return;
+                }
+
+                update(cName);
+            }
+        });
+    }
+
+    /**
+     * Updates the class if its columns changed since the last generation.
+     * @param cName
+     */
+    private void update(String cName) {
+        final TrackedClass trackedClass = tracked.get(cName);
+        final OCClassDeclaration cls = trackedClass == null ? null : trackedClass.cls.getElement();
+        if (cls == null || !cls.isValid()){
+            tracked.remove(cName);
+            return;
+        }
+
+        PsiDocumentManager.getInstance(myProject).commitAllDocuments();
+        final OCInterface ocInterface = PsiUtility.getInterfaceFor(cls);
+        final DbModelBuilder builder = new DbModelBuilder();
+        builder.setPrefix(trackedClass.prefix);
+        builder.setOptions(trackedClass.options);
+        builder.setContext(cls.getContainingFile(), cls, ocInterface == null ? cls.getProperties() : ocInterface.getProperties());
+        if (!builder.isValid()){
+            return;
+        }
+
+        final String signature = builder.getColumnsSignature();
+        if (signature.equals(trackedClass.signature)){
+            return;
+        }
+
+        // Half typed code, signature is kept so the update is retried on the next change.
+        for (PsiFile file : builder.getFiles()) {
+            if (PsiTreeUtil.hasErrorElements(file)){
+                LOG.debug("Skipping DB model update of " + cName + ", file has errors: " + file.getName());
+                return;
+            }
+        }
+
+        LOG.info("Updating DB model of " + cName);
+        updating = true;
+        try {
+            new WriteCommandAction.Simple(myProject, "Update DB model", builder.getFiles()) {
+                @Override
+                protected void run() throws Throwable {
+                    builder.setReplaceExisting(true);
+                    builder.setDeferredReformat(true);
+                    builder.generateIncremental();
+                    builder.flushReformat();
+                }
+            }.execute();
+            trackedClass.signature = signature;
+            GenerationStatsHistory.getInstance(myProject).record(builder.getStats());
+        } finally {
+            updating = false;
+        }
+    }
+
+    /**
+     * Schedules update of tracked classes on changes inside or of their properties.
+     */
+    private class PropertyListener extends PsiTreeChangeAdapter {
+        @Override
+        public void childAdded(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getChild(), event.getParent());
+        }
+
+        @Override
+        public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getChild(), event.getParent());
+        }
+
+        @Override
+        public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getNewChild(), event.getParent());
+        }
+
+        @Override
+        public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+            onChange(null, event.getParent());
+        }
+
+        private void onChange(PsiElement child, PsiElement parent) {
+            if (updating || tracked.isEmpty() || !DbModelSettings.getInstance(myProject).incrementalRegeneration){
+                return;
+            }
+
+            // Property itself was added / removed or something inside property changed.
+            final boolean propertyChange = child instanceof OCProperty
+                    || PsiTreeUtil.getParentOfType(parent, OCProperty.class, false) != null;
+            if (!propertyChange){
+                return;
+            }
+
+            final OCClassDeclaration cls = PsiTreeUtil.getParentOfType(parent, OCClassDeclaration.class, false);
+            if (cls != null && tracked.containsKey(cls.getName())){
+                scheduleUpdate(cls.getName());
+            }
+        }
+    }
+}
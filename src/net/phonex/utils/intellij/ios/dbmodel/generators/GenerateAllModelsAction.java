@@ -0,0 +1,199 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
+import com.jetbrains.cidr.lang.psi.OCInterface;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.builders.ReformatBatch;
+import net.phonex.utils.intellij.ios.dbmodel.settings.DbModelSettings;
+import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Regenerates DB model of all model classes in the project.
+ * Classes are found, their properties resolved and code generated in a cancellable background task,
+ * all the code is then emitted in a single write command.
+ */
+public class GenerateAllModelsAction extends AnAction {
+    private static final Logger LOG = Logger.getInstance(GenerateAllModelsAction.class);
+    private static final String TITLE = "Generate PhoneX DB models";
+    private static final int MAX_NOTIFIED_PROBLEMS = 10;
+
+    public void actionPerformed(AnActionEvent e) {
+        final Project project = e.getProject();
+        if (project == null){
+            return;
+        }
+
+        final DbModelSettings settings = DbModelSettings.getInstance(project);
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, TITLE, true) {
+            private final List<DbModelBuilder> builders = new ArrayList<DbModelBuilder>();
+            private final List<String> summary = new ArrayList<String>();
+            private final List<String> problems = new ArrayList<String>();
+
+            @Override
+            public void run(@NotNull final ProgressIndicator indicator) {
+                indicator.setText("Looking for DB model classes");
+                final List<OCInterface> classes = ApplicationManager.getApplication().runReadAction(new Computable<List<OCInterface>>() {
+                    @Override
+                    public List<OCInterface> compute() {
+                        return PsiUtility.findModelClasses(project, settings.modelSuperClass, settings.modelMarker);
+                    }
+                });
+
+                indicator.setText("Resolving properties");
+                indicator.setIndeterminate(false);
+                for (int i = 0; i < classes.size(); i++) {
+                    indicator.checkCanceled();
+                    indicator.setFraction((double) i / classes.size());
+
+                    final OCInterface cls = classes.get(i);
+                    ApplicationManager.getApplication().runReadAction(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!cls.isValid()){
+                                return;
+                            }
+
+                            indicator.setText2(cls.getName());
+                            resolveClass(cls);
+                        }
+                    });
+                }
+
+                // Code generation does not need PSI, runs without read lock.
+                indicator.setText("Generating code");
+                indicator.setText2("");
+                for (DbModelBuilder builder : builders) {
+                    indicator.checkCanceled();
+                    builder.prepare();
+                }
+            }
+
+            /**
+             * Resolves class files and properties, has to be called in a read action.
+             */
+            private void resolveClass(OCInterface cls) {
+                final DbModelBuilder builder = DbModelBuilder.forModelClass(cls, settings.getOptionsFor(cls.getName()));
+                if (builder == null){
+                    problems.add(cls.getName() + ": skipped, no *_TABLE_NAME constant found, generate the model manually first");
+                    return;
+                }
+
+                if (!builder.isValid()){
+                    problems.add(cls.getName() + ": skipped, implementation not found");
+                    return;
+                }
+
+                builders.add(builder);
+            }
+
+            @Override
+            public void onSuccess() {
+                if (builders.isEmpty()){
+                    showSummary(project, summary, problems);
+                    return;
+                }
+
+                final Set<PsiFile> files = new LinkedHashSet<PsiFile>();
+                for (DbModelBuilder builder : builders) {
+                    files.addAll(Arrays.asList(builder.getFiles()));
+                }
+
+                new WriteCommandAction.Simple(project, TITLE, files.toArray(new PsiFile[files.size()])) {
+
+                    @Override
+                    protected void run() throws Throwable {
+                        final ReformatBatch reformatBatch = new ReformatBatch(project);
+                        for (DbModelBuilder builder : builders) {
+                            final String cName = builder.getClassDeclaration().getName();
+                            if (!builder.isValid()){
+                                problems.add(cName + ": skipped, modified during generation");
+                                continue;
+                            }
+
+                            try {
+                                builder.setReformatBatch(reformatBatch);
+                                builder.setUpdateSchemaSnapshot(true);
+                                builder.generateAll();
+                                DbModelTracker.getInstance(project).track(builder);
+                                summary.add(String.format("%s: %d columns, prefix %s", cName, builder.getColumns().size(), builder.getPrefix()));
+                            } catch(Exception ex){
+                                LOG.warn("Generation failed for " + cName, ex);
+                                problems.add(cName + ": failed, " + ex.getMessage());
+                            }
+                        }
+
+                        final long reformatStart = System.nanoTime();
+                        final int passes = reformatBatch.flush();
+                        LOG.info(String.format("Reformatted %d files in %d ms", passes, (System.nanoTime() - reformatStart) / 1000000L));
+                    }
+
+                }.execute();
+
+                final GenerationStatsHistory history = GenerationStatsHistory.getInstance(project);
+                for (DbModelBuilder builder : builders) {
+                    history.record(builder.getStats());
+                }
+
+                showSummary(project, summary, problems);
+            }
+        });
+    }
+
+    /**
+     * Logs the per model summary, notifies about generated models and lists skipped & failed ones.
+     * @param project
+     * @param summary one line per generated model.
+     * @param problems one line per skipped or failed model.
+     */
+    private static void showSummary(Project project, List<String> summary, List<String> problems) {
+        if (!summary.isEmpty()) {
+            LOG.info(StringUtil.join(summary, "\n"));
+        }
+
+        if (!problems.isEmpty()) {
+            LOG.warn(StringUtil.join(problems, "\n"));
+        }
+
+        final String text;
+        if (summary.isEmpty() && problems.isEmpty()){
+            text = "No DB model classes found.";
+        } else {
+            final StringBuilder sb = new StringBuilder(String.format("%d models generated, %d skipped or failed", summary.size(), problems.size()));
+            final int shown = Math.min(problems.size(), MAX_NOTIFIED_PROBLEMS);
+            for (int i = 0; i < shown; i++) {
+                sb.append("<br/>").append(StringUtil.escapeXml(problems.get(i)));
+            }
+
+            if (shown < problems.size()){
+                sb.append("<br/>... see idea.log for the rest");
+            }
+
+            text = sb.toString();
+        }
+
+        final NotificationType type = problems.isEmpty() ? NotificationType.INFORMATION : NotificationType.WARNING;
+        Notifications.Bus.notify(new Notification(TITLE, TITLE, text, type), project);
+    }
+
+    @Override
+    public void update(AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null);
+    }
+}
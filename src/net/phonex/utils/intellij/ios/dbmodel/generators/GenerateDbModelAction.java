@@ -0,0 +1,97 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.jetbrains.cidr.lang.psi.*;
+import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
+import net.phonex.utils.intellij.ios.dbmodel.settings.DbModelSettings;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Generates DB fields, createTable, createFromCursor and getContentValues in one pass.
+ * Properties are resolved once, code is generated in background and emitted in a single write command.
+ */
+public class GenerateDbModelAction extends AnAction {
+    private static final String TITLE = "Select Fields for DB model";
+    private static final String LABEL_TEXT = "Fields to include in DB model:";
+
+    private final PsiUtility psiUtility = new PsiUtility();
+
+    public void actionPerformed(AnActionEvent e) {
+        OCClassDeclaration psiClass = psiUtility.getOCClassDeclaration(e);
+        PsiFile psiFile = e.getData(LangDataKeys.PSI_FILE);
+
+        GenerateDialog dlg = new GenerateDialog(psiFile, psiClass, TITLE, LABEL_TEXT);
+        dlg.show();
+        if (dlg.isOK()) {
+            generateDbModel(psiFile, psiClass, dlg.getFields(), dlg.getPrefix(), dlg.getOptions());
+        }
+    }
+
+    public void generateDbModel(final PsiFile psiFile, final OCClassDeclaration ocClassDecl, final List<OCProperty> fields, final String prefix, final DbModelOptions options) {
+        final Project project = ocClassDecl.getProject();
+        final DbModelBuilder dbModelBuilder = new DbModelBuilder();
+        dbModelBuilder.setPrefix(prefix);
+        dbModelBuilder.setOptions(options);
+
+        // Schema is extracted in a short read action, code is generated without holding any lock,
+        // the write action only inserts the prepared code.
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Generating DB model", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                ApplicationManager.getApplication().runReadAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        dbModelBuilder.setContext(psiFile, ocClassDecl, fields);
+                    }
+                });
+
+                indicator.checkCanceled();
+                dbModelBuilder.prepare();
+            }
+
+            @Override
+            public void onSuccess() {
+                if (!ocClassDecl.isValid() || !dbModelBuilder.isValid()){
+                    return;
+                }
+
+                new WriteCommandAction.Simple(project, dbModelBuilder.getFiles()) {
+
+                    @Override
+                    protected void run() throws Throwable {
+                        dbModelBuilder.setDeferredReformat(true);
+                        dbModelBuilder.setUpdateSchemaSnapshot(true);
+                        dbModelBuilder.generateAll();
+                        dbModelBuilder.flushReformat();
+                        DbModelTracker.getInstance(project).track(dbModelBuilder);
+                    }
+
+                }.execute();
+
+                // Batch regeneration has to produce the same code, so it reuses the options.
+                DbModelSettings.getInstance(project).putModelOptions(dbModelBuilder.getSchema().className, prefix, options);
+
+                GenerationStatsHistory.getInstance(project).record(dbModelBuilder.getStats());
+            }
+        });
+    }
+
+    @Override
+    public void update(AnActionEvent e) {
+        OCClassDeclaration psiClass = psiUtility.getOCClassDeclaration(e);
+        e.getPresentation().setEnabled(psiClass != null);
+    }
+}
@@ -1,12 +1,22 @@
 package net.phonex.utils.intellij.ios.dbmodel.generators;
 
 import com.intellij.ide.util.DefaultPsiElementCellRenderer;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.ui.LabeledComponent;
+import com.intellij.openapi.ui.ValidationInfo;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.ToolbarDecorator;
 import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBPanel;
@@ -14,20 +24,43 @@ import com.intellij.ui.components.JBTextField;
 import com.jetbrains.cidr.lang.psi.*;
 import com.jetbrains.cidr.lang.types.OCType;
 import com.jetbrains.cidr.lang.util.OCElementFactory;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbCodeGenerator;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
+import net.phonex.utils.intellij.ios.dbmodel.settings.DbModelSettings;
 import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 public class GenerateDialog extends DialogWrapper {
 
     private final CollectionListModel<OCProperty> myFields;
+    private final JBList fieldList;
+    private final ProgressIndicator myLoadingIndicator = new ProgressIndicatorBase();
     private final JComponent myComponent;
     private final JTextField myPrefix;
+    private final JCheckBox myIndexedCursor;
+    private final JCheckBox myLegacyBase64Data;
+    private final JTextField myProjections;
+    private final JCheckBox myDirtyTracking;
+    private final JTextField myPrimaryKey;
+    private final JCheckBox myAutoincrement;
+    private final JCheckBox myWithoutRowid;
+    private final JCheckBox myNotNullPrimitives;
+    private final JCheckBox myPreparedStatements;
+    private final JCheckBox myIdentityCache;
+    private final JTextField myIdentityCacheCostLimit;
+    private final JCheckBox myCursorEnumerator;
+    private final JCheckBox myFullProjection;
+    private boolean myFieldsLoaded = false;
+    private static final String DEFAULT_PREFIX = "PEX_DBXX";
     private static final Logger LOG = Logger.getInstance(GenerateDialog.class);
 
     @SuppressWarnings("unchecked")
@@ -35,51 +68,170 @@ public class GenerateDialog extends DialogWrapper {
         super(psiClass.getProject());
         setTitle(title);
 
-        final String cName = psiClass.getName();
-        OCProperty[] ocProperties = fieldsFrom(psiClass);
-        LOG.info(String.format("ocProperties len=%d", ocProperties.length));
-        if (ocProperties.length == 0 && psiClass instanceof OCImplementation){
-            OCFile cntFile = psiClass.getContainingOCFile();
-            OCFile assocFile = cntFile.getAssociatedFile();
+        myFields = new CollectionListModel<OCProperty>();
 
-            LOG.info(String.format("Null properties. cName=%s, CnfFile=%s, assocFile: %s", cName, cntFile.getName(), assocFile.getName()));
-            OCInterface ocx = PsiUtility.findInterfaceInElement(assocFile, cName);
-
-            // Read properties from the @interface part.
-            if (ocx != null){
-                ocProperties = fieldsFrom(ocx);
-            }
-        }
-
-        myFields = new CollectionListModel<OCProperty>(ocProperties);
-
-        JList fieldList = new JBList(myFields);
+        fieldList = new JBList(myFields);
         fieldList.setCellRenderer(new DefaultPsiElementCellRenderer());
+        fieldList.setPaintBusy(true);
+        fieldList.getEmptyText().setText("Loading properties...");
 
         ToolbarDecorator decorator = ToolbarDecorator.createDecorator(fieldList);
         decorator.disableAddAction();
         JPanel panel = decorator.createPanel();
         LabeledComponent<JPanel> jPanelLabeledComponent = LabeledComponent.create(panel, labelText);
 
-        myPrefix = new JBTextField("PEX_DBXX");
+        myPrefix = new JBTextField(getInitialPrefix(psiClass));
         LabeledComponent<JTextField> jTextPrefix = LabeledComponent.create(myPrefix, "Prefix");
 
+        myIndexedCursor = new JBCheckBox("Bind cursor columns once, decode rows by index");
+        myLegacyBase64Data = new JBCheckBox("Store NSData as base64 TEXT, uncheck for BLOB in new tables");
+        myDirtyTracking = new JBCheckBox("Track changed columns, generate setters and getDirtyContentValues");
+        myFullProjection = new JBCheckBox("Full projection, getFullProjection");
+        myProjections = new JBTextField();
+        myPrimaryKey = new JBTextField();
+        LabeledComponent<JTextField> jTextPrimaryKey = LabeledComponent.create(myPrimaryKey, "Primary key property (empty for id, rowid alias)");
+        myAutoincrement = new JBCheckBox("AUTOINCREMENT id, never reuse ids", true);
+        myWithoutRowid = new JBCheckBox("WITHOUT ROWID table (natural key)");
+        myNotNullPrimitives = new JBCheckBox("NOT NULL DEFAULT 0 for primitive types");
+        myPreparedStatements = new JBCheckBox("sqlite3 prepared statement insert and batch insert (imports sqlite3.h)");
+        myIdentityCache = new JBCheckBox("Identity map cache, loadById: and deleteById:fromDatabase: (imports sqlite3.h)");
+        myIdentityCacheCostLimit = new JBTextField(String.valueOf(new DbModelOptions().identityCacheCostLimit));
+        myCursorEnumerator = new JBCheckBox("Lazy cursor enumerator, enumeratorForCursor:reuse:");
+        LabeledComponent<JTextField> jTextIdentityCacheCostLimit = LabeledComponent.create(myIdentityCacheCostLimit, "Identity map cache cost limit (bytes)");
+        LabeledComponent<JTextField> jTextProjections = LabeledComponent.create(myProjections, "Projections (name: property, property; ...)");
+
+        JBPanel optionsPanel = new JBPanel();
+        optionsPanel.setLayout(new BoxLayout(optionsPanel, BoxLayout.PAGE_AXIS));
+        optionsPanel.add(jTextPrefix);
+        optionsPanel.add(myIndexedCursor);
+        optionsPanel.add(myLegacyBase64Data);
+        optionsPanel.add(myDirtyTracking);
+        optionsPanel.add(myFullProjection);
+        optionsPanel.add(jTextProjections);
+        optionsPanel.add(jTextPrimaryKey);
+        optionsPanel.add(myAutoincrement);
+        optionsPanel.add(myWithoutRowid);
+        optionsPanel.add(myNotNullPrimitives);
+        optionsPanel.add(myPreparedStatements);
+        optionsPanel.add(myIdentityCache);
+        optionsPanel.add(jTextIdentityCacheCostLimit);
+        optionsPanel.add(myCursorEnumerator);
+
         JBPanel jbPanel = new JBPanel(new BorderLayout());
         jbPanel.add(jPanelLabeledComponent, BorderLayout.CENTER);
-        jbPanel.add(jTextPrefix, BorderLayout.PAGE_END);
+        jbPanel.add(optionsPanel, BorderLayout.PAGE_END);
+
+        // Regeneration keeps the options the model was generated with.
+        final DbModelOptions storedOptions = DbModelSettings.getInstance(psiClass.getProject()).getModelOptions(psiClass.getName());
+        setOptions(storedOptions == null ? new DbModelOptions() : storedOptions);
 
         myComponent = jbPanel;
         init();
+        initValidation();
+        setOKActionEnabled(false);
+        loadFields(psiClass);
+    }
+
+    /**
+     * Prefix the model was generated with, the one of its table name constant or the default one.
+     * @param psiClass
+     * @return
+     */
+    private static String getInitialPrefix(OCClassDeclaration psiClass) {
+        final String storedPrefix = DbModelSettings.getInstance(psiClass.getProject()).getModelPrefix(psiClass.getName());
+        if (!StringUtil.isEmpty(storedPrefix)){
+            return storedPrefix;
+        }
+
+        final String detectedPrefix = DbModelBuilder.detectPrefix(psiClass);
+        return detectedPrefix == null ? DEFAULT_PREFIX : detectedPrefix;
+    }
+
+    /**
+     * Resolves class properties in a background read action, the dialog is shown meanwhile.
+     * Loading is cancelled when the dialog is closed.
+     * @param psiClass
+     */
+    private void loadFields(final OCClassDeclaration psiClass) {
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ProgressManager.getInstance().runProcess(new Runnable() {
+                        @Override
+                        public void run() {
+                            final List<OCProperty> ocProperties = ApplicationManager.getApplication().runReadAction(new Computable<List<OCProperty>>() {
+                                @Override
+                                public List<OCProperty> compute() {
+                                    return psiClass.isValid() ? PsiUtility.getModelProperties(psiClass) : new ArrayList<OCProperty>();
+                                }
+                            });
+
+                            ApplicationManager.getApplication().invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    onFieldsLoaded(ocProperties);
+                                }
+                            }, ModalityState.any());
+                        }
+                    }, myLoadingIndicator);
+                } catch(ProcessCanceledException e){
+                    LOG.debug("Loading properties cancelled");
+                }
+            }
+        });
+    }
+
+    private void onFieldsLoaded(List<OCProperty> ocProperties) {
+        if (myLoadingIndicator.isCanceled()){
+            return;
+        }
+
+        LOG.info(String.format("ocProperties len=%d", ocProperties.size()));
+        myFields.replaceAll(ocProperties);
+        myFieldsLoaded = true;
+        fieldList.setPaintBusy(false);
+        fieldList.getEmptyText().setText("No properties found");
+        setOKActionEnabled(true);
     }
 
-    private OCProperty[] fieldsFrom(final OCClassDeclaration psiClass) {
-        final List<OCProperty> filteredFields = new ArrayList<OCProperty>();
-        List<OCProperty> propList = psiClass.getProperties();
-        for (OCProperty psiField : propList) {
-            filteredFields.add(psiField);
+    @Nullable
+    @Override
+    protected ValidationInfo doValidate() {
+        if (myWithoutRowid.isSelected() && myPrimaryKey.getText().trim().isEmpty()){
+            return new ValidationInfo("WITHOUT ROWID table needs a natural primary key property", myPrimaryKey);
+        }
+
+        // Projection loaders decode by index, an unknown property would shift the columns.
+        if (myFieldsLoaded){
+            final List<String> errors = DbCodeGenerator.validateProjections(myProjections.getText(), getPropertyNames());
+            if (!errors.isEmpty()){
+                return new ValidationInfo(errors.get(0), myProjections);
+            }
         }
 
-        return filteredFields.toArray(new OCProperty[filteredFields.size()]);
+        return null;
+    }
+
+    /**
+     * Names of the listed properties, i.e., the columns to be generated.
+     * @return
+     */
+    private Set<String> getPropertyNames() {
+        final Set<String> names = new HashSet<String>();
+        for (OCProperty property : myFields.getItems()) {
+            for (OCDeclarator declarator : property.getDeclaration().getDeclarators()) {
+                names.add(declarator.getName());
+            }
+        }
+
+        return names;
+    }
+
+    @Override
+    protected void dispose() {
+        myLoadingIndicator.cancel();
+        super.dispose();
     }
 
 //
@@ -109,5 +261,43 @@ public class GenerateDialog extends DialogWrapper {
         return myPrefix.getText();
     }
 
+    public DbModelOptions getOptions(){
+        final DbModelOptions options = new DbModelOptions();
+        options.indexedCursor = myIndexedCursor.isSelected();
+        options.legacyBase64Data = myLegacyBase64Data.isSelected();
+        options.fullProjection = myFullProjection.isSelected();
+        options.projections = myProjections.getText().trim();
+        options.dirtyTracking = myDirtyTracking.isSelected();
+        options.primaryKey = myPrimaryKey.getText().trim();
+        options.autoincrement = myAutoincrement.isSelected();
+        options.withoutRowid = myWithoutRowid.isSelected();
+        options.notNullPrimitives = myNotNullPrimitives.isSelected();
+        options.preparedStatements = myPreparedStatements.isSelected();
+        options.identityCache = myIdentityCache.isSelected();
+        options.cursorEnumerator = myCursorEnumerator.isSelected();
+        try {
+            options.identityCacheCostLimit = Integer.parseInt(myIdentityCacheCostLimit.getText().trim());
+        } catch(NumberFormatException e){
+            LOG.warn("Invalid identity cache cost limit, default used: " + myIdentityCacheCostLimit.getText());
+        }
+        return options;
+    }
+
+    private void setOptions(DbModelOptions options){
+        myIndexedCursor.setSelected(options.indexedCursor);
+        myLegacyBase64Data.setSelected(options.legacyBase64Data);
+        myFullProjection.setSelected(options.fullProjection);
+        myProjections.setText(options.projections);
+        myDirtyTracking.setSelected(options.dirtyTracking);
+        myPrimaryKey.setText(options.primaryKey);
+        myAutoincrement.setSelected(options.autoincrement);
+        myWithoutRowid.setSelected(options.withoutRowid);
+        myNotNullPrimitives.setSelected(options.notNullPrimitives);
+        myPreparedStatements.setSelected(options.preparedStatements);
+        myIdentityCache.setSelected(options.identityCache);
+        myIdentityCacheCostLimit.setText(String.valueOf(options.identityCacheCostLimit));
+        myCursorEnumerator.setSelected(options.cursorEnumerator);
+    }
+
 }
 
@@ -5,12 +5,12 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.LangDataKeys;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.psi.*;
-import com.intellij.psi.codeStyle.CodeStyleManager;
 import com.jetbrains.cidr.lang.psi.*;
 import com.jetbrains.cidr.lang.types.OCType;
 import com.jetbrains.cidr.lang.util.OCElementFactory;
 import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
 import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
 
 import java.util.List;
 
@@ -31,20 +31,21 @@ public class GenerateFieldsAction extends AnAction {
         GenerateDialog dlg = new GenerateDialog(psiFile, psiClass, TITLE, LABEL_TEXT);
         dlg.show();
         if (dlg.isOK()) {
-            generateEqualsHashCode(psiFile, psiClass, dlg.getFields(), dlg.getPrefix());
+            generateEqualsHashCode(psiFile, psiClass, dlg.getFields(), dlg.getPrefix(), dlg.getOptions());
         }
     }
 
-    public void generateEqualsHashCode(final PsiFile psiFile, final OCClassDeclaration ocClassDecl, final List<OCProperty> fields, final String prefix) {
-        new WriteCommandAction.Simple(ocClassDecl.getProject(), ocClassDecl.getContainingFile()) {
+    public void generateEqualsHashCode(final PsiFile psiFile, final OCClassDeclaration ocClassDecl, final List<OCProperty> fields, final String prefix, final DbModelOptions options) {
+        dbModelBuilder.setPrefix(prefix);
+        dbModelBuilder.setOptions(options);
+        dbModelBuilder.setContext(psiFile, ocClassDecl, fields);
+        new WriteCommandAction.Simple(ocClassDecl.getProject(), dbModelBuilder.getFiles()) {
 
             @Override
             protected void run() throws Throwable {
-                final CodeStyleManager codeStyleManager = CodeStyleManager.getInstance(ocClassDecl.getProject());
-
-                dbModelBuilder.setPrefix(prefix);
-                dbModelBuilder.setContext(psiFile, ocClassDecl, fields);
+                dbModelBuilder.setDeferredReformat(true);
                 dbModelBuilder.generateDbFields();
+                dbModelBuilder.flushReformat();
             }
 
         }.execute();
@@ -0,0 +1,55 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.*;
+import com.jetbrains.cidr.lang.psi.*;
+import net.phonex.utils.intellij.ios.dbmodel.utilities.PsiUtility;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelBuilder;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
+
+import java.util.List;
+
+/**
+ * Generates +loadAllFromCursor: reading all cursor rows with columns bound once.
+ */
+public class GenerateLoadAllFromCursorAction extends AnAction {
+    private static final String TITLE = "Select Fields for loadAllFromCursor";
+    private static final String LABEL_TEXT = "Fields to include in loadAllFromCursor:";
+
+    private final DbModelBuilder dbModelBuilder = new DbModelBuilder();
+    private final PsiUtility psiUtility = new PsiUtility();
+
+    public void actionPerformed(AnActionEvent e) {
+        OCClassDeclaration psiClass = psiUtility.getOCClassDeclaration(e);
+        PsiFile psiFile = e.getData(LangDataKeys.PSI_FILE);
+
+        GenerateDialog dlg = new GenerateDialog(psiFile, psiClass, TITLE, LABEL_TEXT);
+        dlg.show();
+        if (dlg.isOK()) {
+            generateLoadAll(psiFile, psiClass, dlg.getFields(), dlg.getPrefix(), dlg.getOptions());
+        }
+    }
+
+    public void generateLoadAll(final PsiFile psiFile, final OCClassDeclaration ocClassDecl, final List<OCProperty> fields, final String prefix, final DbModelOptions options) {
+        dbModelBuilder.setPrefix(prefix);
+        dbModelBuilder.setOptions(options);
+        dbModelBuilder.setContext(psiFile, ocClassDecl, fields);
+        new WriteCommandAction.Simple(ocClassDecl.getProject(), dbModelBuilder.getFiles()) {
+
+            @Override
+            protected void run() throws Throwable {
+                dbModelBuilder.generateLoadAllFromCursor();
+            }
+
+        }.execute();
+    }
+
+    @Override
+    public void update(AnActionEvent e) {
+        OCClassDeclaration psiClass = psiUtility.getOCClassDeclaration(e);
+        e.getPresentation().setEnabled(psiClass != null);
+    }
+}
\ No newline at end of file
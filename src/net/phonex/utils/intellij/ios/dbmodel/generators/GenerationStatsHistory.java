@@ -0,0 +1,77 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.ui.UIUtil;
+import net.phonex.utils.intellij.ios.dbmodel.builders.GenerationStats;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps statistics of the last generation runs in the project, each recorded run is logged.
+ */
+public class GenerationStatsHistory {
+    private static final Logger LOG = Logger.getInstance(GenerationStatsHistory.class);
+    public static final int MAX_RUNS = 50;
+
+    private final LinkedList<GenerationStats> runs = new LinkedList<GenerationStats>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    public static GenerationStatsHistory getInstance(Project project) {
+        return ServiceManager.getService(project, GenerationStatsHistory.class);
+    }
+
+    public void record(GenerationStats stats) {
+        if (stats == null){
+            return;
+        }
+
+        LOG.info("DB model generated, " + stats);
+        synchronized (runs){
+            runs.addFirst(stats);
+            while (runs.size() > MAX_RUNS){
+                runs.removeLast();
+            }
+        }
+
+        for (final Runnable listener : listeners) {
+            UIUtil.invokeLaterIfNeeded(listener);
+        }
+    }
+
+    /**
+     * Returns recorded runs, the most recent first.
+     * @return
+     */
+    public List<GenerationStats> getRuns() {
+        synchronized (runs){
+            return new ArrayList<GenerationStats>(runs);
+        }
+    }
+
+    public void clear() {
+        synchronized (runs){
+            runs.clear();
+        }
+
+        for (final Runnable listener : listeners) {
+            UIUtil.invokeLaterIfNeeded(listener);
+        }
+    }
+
+    /**
+     * Listener is called on EDT after a run is recorded.
+     * @param listener
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+}
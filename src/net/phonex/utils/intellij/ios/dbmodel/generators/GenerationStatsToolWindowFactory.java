@@ -0,0 +1,100 @@
+package net.phonex.utils.intellij.ios.dbmodel.generators;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.table.JBTable;
+import net.phonex.utils.intellij.ios.dbmodel.builders.GenerationStats;
+
+import javax.swing.table.AbstractTableModel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tool window with timing and counters of the last DB model generation runs.
+ */
+public class GenerationStatsToolWindowFactory implements ToolWindowFactory {
+
+    @Override
+    public void createToolWindowContent(Project project, ToolWindow toolWindow) {
+        final GenerationStatsHistory history = GenerationStatsHistory.getInstance(project);
+        final StatsTableModel model = new StatsTableModel();
+        final Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                model.setRuns(history.getRuns());
+            }
+        };
+
+        listener.run();
+        history.addListener(listener);
+
+        final Content content = ContentFactory.SERVICE.getInstance().createContent(new JBScrollPane(new JBTable(model)), "", false);
+        content.setDisposer(new Disposable() {
+            @Override
+            public void dispose() {
+                history.removeListener(listener);
+            }
+        });
+
+        toolWindow.getContentManager().addContent(content);
+    }
+
+    private static class StatsTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Time", "Class", "Declarators", "Inserted", "Up to date", "Reformat calls"};
+
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+        private List<GenerationStats> runs = new ArrayList<GenerationStats>();
+
+        public void setRuns(List<GenerationStats> runs) {
+            this.runs = runs;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return runs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length + GenerationStats.Phase.values().length + 1;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            if (column < COLUMNS.length){
+                return COLUMNS[column];
+            }
+
+            final int phase = column - COLUMNS.length;
+            return phase < GenerationStats.Phase.values().length ?
+                    GenerationStats.Phase.values()[phase].label + " [ms]"
+                    : "total [ms]";
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            final GenerationStats stats = runs.get(rowIndex);
+            switch (columnIndex){
+                case 0: return timeFormat.format(new Date(stats.getTimestamp()));
+                case 1: return stats.getClassName();
+                case 2: return stats.getDeclarators();
+                case 3: return stats.getInsertedElements();
+                case 4: return stats.getSkippedElements();
+                case 5: return stats.getReformatCalls();
+            }
+
+            final int phase = columnIndex - COLUMNS.length;
+            return phase < GenerationStats.Phase.values().length ?
+                    stats.getMillis(GenerationStats.Phase.values()[phase])
+                    : stats.getTotalMillis();
+        }
+    }
+}
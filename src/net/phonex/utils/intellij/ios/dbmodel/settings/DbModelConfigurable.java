@@ -0,0 +1,159 @@
+package net.phonex.utils.intellij.ios.dbmodel.settings;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.options.ConfigurationException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.LabeledComponent;
+import com.intellij.ui.components.JBCheckBox;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBPanel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextField;
+import net.phonex.utils.intellij.ios.dbmodel.builders.TypeMapping;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project settings page for the DB model generator.
+ * Type mappings are edited as text, one mapping per line: type | SQL type | cursor getter | putter [| sqlite3 binder]
+ */
+public class DbModelConfigurable implements Configurable {
+    private static final String SEPARATOR = "|";
+
+    private final Project project;
+    private JTextArea myTypeMappings;
+    private JTextField myModelSuperClass;
+    private JTextField myModelMarker;
+    private JCheckBox myIncrementalRegeneration;
+    private JCheckBox myBatchIndexedCursor;
+    private JCheckBox myBatchLegacyBase64Data;
+    private JCheckBox myBatchDirtyTracking;
+
+    public DbModelConfigurable(Project project) {
+        this.project = project;
+    }
+
+    @Nls
+    @Override
+    public String getDisplayName() {
+        return "PhoneX DB model generator";
+    }
+
+    @Nullable
+    @Override
+    public String getHelpTopic() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public JComponent createComponent() {
+        myTypeMappings = new JTextArea(10, 80);
+        myModelSuperClass = new JBTextField();
+        myModelMarker = new JBTextField();
+        myIncrementalRegeneration = new JBCheckBox("Update generated DB model code when properties change");
+        myBatchIndexedCursor = new JBCheckBox("Batch generation defaults: bind cursor columns once, decode rows by index");
+        myBatchLegacyBase64Data = new JBCheckBox("Batch generation defaults: store NSData as base64 TEXT, uncheck for BLOB in new tables");
+        myBatchDirtyTracking = new JBCheckBox("Batch generation defaults: track changed columns");
+
+        JBPanel panel = new JBPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.PAGE_AXIS));
+        panel.add(LabeledComponent.create(new JBScrollPane(myTypeMappings),
+                "Type mappings (type | SQL type | cursor getter, $idx = column index | content values putter [| sqlite3 binder, $stmt $idx $value]):"));
+        panel.add(LabeledComponent.create(myModelSuperClass, "Batch generation: model super class"));
+        panel.add(LabeledComponent.create(myModelMarker, "Batch generation: model marker comment"));
+        panel.add(myIncrementalRegeneration);
+        panel.add(new JBLabel("Models generated from the generate dialog keep their own options."));
+        panel.add(myBatchIndexedCursor);
+        panel.add(myBatchLegacyBase64Data);
+        panel.add(myBatchDirtyTracking);
+        return panel;
+    }
+
+    @Override
+    public boolean isModified() {
+        final DbModelSettings settings = DbModelSettings.getInstance(project);
+        return !toText(settings.typeMappings).equals(myTypeMappings.getText().trim())
+                || !settings.modelSuperClass.equals(myModelSuperClass.getText().trim())
+                || !settings.modelMarker.equals(myModelMarker.getText().trim())
+                || settings.incrementalRegeneration != myIncrementalRegeneration.isSelected()
+                || settings.batchOptions.indexedCursor != myBatchIndexedCursor.isSelected()
+                || settings.batchOptions.legacyBase64Data != myBatchLegacyBase64Data.isSelected()
+                || settings.batchOptions.dirtyTracking != myBatchDirtyTracking.isSelected();
+    }
+
+    @Override
+    public void apply() throws ConfigurationException {
+        final DbModelSettings settings = DbModelSettings.getInstance(project);
+        settings.typeMappings = fromText(myTypeMappings.getText());
+        settings.modelSuperClass = myModelSuperClass.getText().trim();
+        settings.modelMarker = myModelMarker.getText().trim();
+        settings.incrementalRegeneration = myIncrementalRegeneration.isSelected();
+        settings.batchOptions.indexedCursor = myBatchIndexedCursor.isSelected();
+        settings.batchOptions.legacyBase64Data = myBatchLegacyBase64Data.isSelected();
+        settings.batchOptions.dirtyTracking = myBatchDirtyTracking.isSelected();
+    }
+
+    @Override
+    public void reset() {
+        final DbModelSettings settings = DbModelSettings.getInstance(project);
+        myTypeMappings.setText(toText(settings.typeMappings));
+        myModelSuperClass.setText(settings.modelSuperClass);
+        myModelMarker.setText(settings.modelMarker);
+        myIncrementalRegeneration.setSelected(settings.incrementalRegeneration);
+        myBatchIndexedCursor.setSelected(settings.batchOptions.indexedCursor);
+        myBatchLegacyBase64Data.setSelected(settings.batchOptions.legacyBase64Data);
+        myBatchDirtyTracking.setSelected(settings.batchOptions.dirtyTracking);
+    }
+
+    @Override
+    public void disposeUIResources() {
+        myTypeMappings = null;
+        myModelSuperClass = null;
+        myModelMarker = null;
+        myIncrementalRegeneration = null;
+        myBatchIndexedCursor = null;
+        myBatchLegacyBase64Data = null;
+        myBatchDirtyTracking = null;
+    }
+
+    private static String toText(List<TypeMapping> mappings) {
+        StringBuilder builder = new StringBuilder();
+        for (TypeMapping mapping : mappings) {
+            builder.append(mapping.type).append(" ").append(SEPARATOR).append(" ")
+                    .append(mapping.sqlType).append(" ").append(SEPARATOR).append(" ")
+                    .append(mapping.getter).append(" ").append(SEPARATOR).append(" ")
+                    .append(mapping.putter);
+            if (mapping.binder != null){
+                builder.append(" ").append(SEPARATOR).append(" ").append(mapping.binder);
+            }
+
+            builder.append("\n");
+        }
+
+        return builder.toString().trim();
+    }
+
+    private static List<TypeMapping> fromText(String text) throws ConfigurationException {
+        final List<TypeMapping> mappings = new ArrayList<TypeMapping>();
+        for (String line : text.split("\n")) {
+            if (line.trim().isEmpty()){
+                continue;
+            }
+
+            final String[] parts = line.split("\\|");
+            if (parts.length != 4 && parts.length != 5){
+                throw new ConfigurationException("Invalid type mapping, 4 or 5 parts expected: " + line);
+            }
+
+            final String binder = parts.length == 5 ? parts[4].trim() : null;
+            mappings.add(new TypeMapping(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim(), binder));
+        }
+
+        return mappings;
+    }
+}
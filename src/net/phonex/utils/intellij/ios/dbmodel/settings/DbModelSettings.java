@@ -0,0 +1,157 @@
+package net.phonex.utils.intellij.ios.dbmodel.settings;
+
+import com.intellij.openapi.components.*;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.intellij.util.xmlb.annotations.AbstractCollection;
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
+import net.phonex.utils.intellij.ios.dbmodel.builders.SchemaSnapshot;
+import net.phonex.utils.intellij.ios.dbmodel.builders.TypeMapping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project settings of the DB model generator, stored with the project.
+ */
+@State(
+        name = "PhoneXDbModelSettings",
+        storages = {
+                @Storage(file = StoragePathMacros.PROJECT_FILE),
+                @Storage(file = StoragePathMacros.PROJECT_CONFIG_DIR + "/phonexDbModel.xml", scheme = StorageScheme.DIRECTORY_BASED)
+        }
+)
+public class DbModelSettings implements PersistentStateComponent<DbModelSettings> {
+    /**
+     * Project specific type mappings, e.g., for custom enums and typedefs.
+     */
+    @AbstractCollection(surroundWithTag = false, elementTag = "typeMapping")
+    public List<TypeMapping> typeMappings = new ArrayList<TypeMapping>();
+
+    /**
+     * Batch generation processes subclasses of this class, direct or indirect. Empty to disable.
+     */
+    public String modelSuperClass = "PEXDbModelBase";
+
+    /**
+     * Batch generation processes classes with a comment containing this marker right before @interface. Empty to disable.
+     */
+    public String modelMarker = "@dbmodel";
+
+    /**
+     * Generated model classes are updated automatically when their properties change.
+     */
+    public boolean incrementalRegeneration = false;
+
+    /**
+     * Options used by the batch generation for models without stored options.
+     */
+    public DbModelOptions batchOptions = new DbModelOptions();
+
+    /**
+     * Options each model was generated with in the generate dialog, batch generation reuses them.
+     */
+    @AbstractCollection(surroundWithTag = false, elementTag = "modelOptions")
+    public List<ModelOptions> modelOptions = new ArrayList<ModelOptions>();
+
+    /**
+     * Table columns of each model as of the last generation, used to generate schema upgrades.
+     */
+    @AbstractCollection(surroundWithTag = false, elementTag = "schemaSnapshot")
+    public List<SchemaSnapshot> schemaSnapshots = new ArrayList<SchemaSnapshot>();
+
+    public static DbModelSettings getInstance(Project project) {
+        return ServiceManager.getService(project, DbModelSettings.class);
+    }
+
+    public SchemaSnapshot getSchemaSnapshot(String className) {
+        for (SchemaSnapshot snapshot : schemaSnapshots) {
+            if (snapshot.className != null && snapshot.className.equals(className)){
+                return snapshot;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores the snapshot, replaces the previous snapshot of the same class.
+     * @param snapshot
+     */
+    public void putSchemaSnapshot(SchemaSnapshot snapshot) {
+        final SchemaSnapshot previous = getSchemaSnapshot(snapshot.className);
+        if (previous != null){
+            schemaSnapshots.remove(previous);
+        }
+
+        schemaSnapshots.add(snapshot);
+    }
+
+    /**
+     * Returns options the model was generated with, null if not stored.
+     * @param className
+     * @return
+     */
+    public DbModelOptions getModelOptions(String className) {
+        for (ModelOptions entry : modelOptions) {
+            if (entry.className != null && entry.className.equals(className)){
+                return entry.options;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns prefix the model was generated with, null if not stored.
+     * @param className
+     * @return
+     */
+    public String getModelPrefix(String className) {
+        for (ModelOptions entry : modelOptions) {
+            if (entry.className != null && entry.className.equals(className)){
+                return entry.prefix;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns options the model was generated with, batch options if not stored.
+     * @param className
+     * @return
+     */
+    public DbModelOptions getOptionsFor(String className) {
+        final DbModelOptions options = getModelOptions(className);
+        return options == null ? batchOptions : options;
+    }
+
+    /**
+     * Stores prefix and options of the model, replaces the previous ones.
+     * @param className
+     * @param prefix
+     * @param options
+     */
+    public void putModelOptions(String className, String prefix, DbModelOptions options) {
+        for (ModelOptions entry : modelOptions) {
+            if (entry.className != null && entry.className.equals(className)){
+                entry.prefix = prefix;
+                entry.options = options;
+                return;
+            }
+        }
+
+        modelOptions.add(new ModelOptions(className, prefix, options));
+    }
+
+    @Override
+    public DbModelSettings getState() {
+        return this;
+    }
+
+    @Override
+    public void loadState(DbModelSettings state) {
+        XmlSerializerUtil.copyBean(state, this);
+    }
+}
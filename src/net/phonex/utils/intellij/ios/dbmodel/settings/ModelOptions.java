@@ -0,0 +1,22 @@
+package net.phonex.utils.intellij.ios.dbmodel.settings;
+
+import net.phonex.utils.intellij.ios.dbmodel.builders.DbModelOptions;
+
+/**
+ * Prefix and generator options a model class was last generated with in the generate dialog, reused by batch regeneration.
+ * Public fields & default constructor so the entry can be stored in project settings.
+ */
+public class ModelOptions {
+    public String className;
+    public String prefix;
+    public DbModelOptions options = new DbModelOptions();
+
+    public ModelOptions() {
+    }
+
+    public ModelOptions(String className, String prefix, DbModelOptions options) {
+        this.className = className;
+        this.prefix = prefix;
+        this.options = options;
+    }
+}
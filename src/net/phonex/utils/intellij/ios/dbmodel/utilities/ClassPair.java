@@ -0,0 +1,20 @@
+package net.phonex.utils.intellij.ios.dbmodel.utilities;
+
+import com.jetbrains.cidr.lang.psi.OCImplementation;
+import com.jetbrains.cidr.lang.psi.OCInterface;
+
+/**
+ * Holder class for @interface and @implementation of a class, any of them may be missing.
+ */
+public class ClassPair {
+    public OCInterface ocInterface;
+    public OCImplementation ocImplementation;
+
+    @Override
+    public String toString() {
+        return "ClassPair{" +
+                "ocInterface=" + (ocInterface == null ? null : ocInterface.getContainingFile().getName()) +
+                ", ocImplementation=" + (ocImplementation == null ? null : ocImplementation.getContainingFile().getName()) +
+                '}';
+    }
+}
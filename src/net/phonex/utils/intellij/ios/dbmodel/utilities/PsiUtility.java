@@ -4,17 +4,32 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.LangDataKeys;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.jetbrains.cidr.lang.psi.OCClassDeclaration;
 import com.jetbrains.cidr.lang.psi.OCFile;
 import com.jetbrains.cidr.lang.psi.OCImplementation;
 import com.jetbrains.cidr.lang.psi.OCInterface;
+import com.jetbrains.cidr.lang.psi.OCProperty;
 
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class PsiUtility {
+    private static final Key<CachedValue<List<OCProperty>>> PROPERTIES_KEY = Key.create("net.phonex.dbmodel.properties");
+    private static final Key<CachedValue<Map<String, ClassPair>>> FILE_CLASSES_KEY = Key.create("net.phonex.dbmodel.fileClasses");
+    private static final Key<CachedValue<Map<String, ClassPair>>> PROJECT_CLASSES_KEY = Key.create("net.phonex.dbmodel.projectClasses");
 
     public OCClassDeclaration getOCClassDeclaration(AnActionEvent e) {
         PsiFile psiFile = e.getData(LangDataKeys.PSI_FILE);
@@ -57,7 +72,8 @@ public class PsiUtility {
             return null;
         }
 
-        return findInterfaceInElement(assocFile, cls.getCanonicalName());
+        final ClassPair pair = getFileClasses(assocFile).get(cls.getCanonicalName());
+        return pair == null ? null : pair.ocInterface;
     }
 
     public static OCImplementation findImplementationInElement(PsiElement element, String cName) {
@@ -89,7 +105,264 @@ public class PsiUtility {
             return null;
         }
 
-        return findImplementationInElement(assocFile, cls.getCanonicalName());
+        final ClassPair pair = getFileClasses(assocFile).get(cls.getCanonicalName());
+        return pair == null ? null : pair.ocImplementation;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns interfaces and implementations declared in the file by class name.
+     * The first declaration of the name wins, as in findInterfaceInElement.
+     * File is scanned once, result is cached until the file changes.
+     * @param file
+     * @return
+     */
+    public static Map<String, ClassPair> getFileClasses(final PsiFile file) {
+        return CachedValuesManager.getManager(file.getProject()).getCachedValue(file, FILE_CLASSES_KEY, new CachedValueProvider<Map<String, ClassPair>>() {
+            @Override
+            public Result<Map<String, ClassPair>> compute() {
+                final Map<String, ClassPair> classes = new HashMap<String, ClassPair>();
+                for (OCClassDeclaration cls : PsiTreeUtil.findChildrenOfType(file, OCClassDeclaration.class)) {
+                    final String name = cls.getName();
+                    if (name == null){
+                        continue;
+                    }
+
+                    ClassPair pair = classes.get(name);
+                    if (pair == null){
+                        pair = new ClassPair();
+                        classes.put(name, pair);
+                    }
+
+                    if (cls instanceof OCInterface && pair.ocInterface == null){
+                        pair.ocInterface = (OCInterface) cls;
+                    } else if (cls instanceof OCImplementation && pair.ocImplementation == null){
+                        pair.ocImplementation = (OCImplementation) cls;
+                    }
+                }
+
+                return Result.create(Collections.unmodifiableMap(classes), file);
+            }
+        }, false);
+    }
+
+    /**
+     * Returns interfaces and implementations of all classes in the project sources by class name.
+     * Per file results are reused, the map is rebuilt only after a PSI change.
+     * Has to be called in a read action.
+     * @param project
+     * @return
+     */
+    public static Map<String, ClassPair> getProjectClasses(final Project project) {
+        return CachedValuesManager.getManager(project).getCachedValue(project, PROJECT_CLASSES_KEY, new CachedValueProvider<Map<String, ClassPair>>() {
+            @Override
+            public Result<Map<String, ClassPair>> compute() {
+                final PsiManager psiManager = PsiManager.getInstance(project);
+                final GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+                final Map<String, ClassPair> classes = new HashMap<String, ClassPair>();
+                for (String ext : new String[]{"h", "m", "mm"}) {
+                    for (VirtualFile vFile : FilenameIndex.getAllFilesByExt(project, ext, scope)) {
+                        final PsiFile file = psiManager.findFile(vFile);
+                        if (file == null){
+                            continue;
+                        }
+
+                        for (Map.Entry<String, ClassPair> entry : getFileClasses(file).entrySet()) {
+                            ClassPair pair = classes.get(entry.getKey());
+                            if (pair == null){
+                                pair = new ClassPair();
+                                classes.put(entry.getKey(), pair);
+                            }
+
+                            if (pair.ocInterface == null){
+                                pair.ocInterface = entry.getValue().ocInterface;
+                            }
+
+                            if (pair.ocImplementation == null){
+                                pair.ocImplementation = entry.getValue().ocImplementation;
+                            }
+                        }
+                    }
+                }
+
+                return Result.create(Collections.unmodifiableMap(classes), PsiModificationTracker.MODIFICATION_COUNT);
+            }
+        }, false);
+    }
+
+    /**
+     * Returns properties of the class, for an implementation without properties the ones from its @interface.
+     * Result is cached on the class until the class file or its associated file changes.
+     * Has to be called in a read action.
+     * @param cls
+     * @return
+     */
+    public static List<OCProperty> getModelProperties(final OCClassDeclaration cls) {
+        return CachedValuesManager.getManager(cls.getProject()).getCachedValue(cls, PROPERTIES_KEY, new CachedValueProvider<List<OCProperty>>() {
+            @Override
+            public Result<List<OCProperty>> compute() {
+                List<OCProperty> properties = cls.getProperties();
+                if (properties.isEmpty() && cls instanceof OCImplementation){
+                    final OCInterface ocInterface = getInterfaceFor(cls);
+                    if (ocInterface != null){
+                        properties = ocInterface.getProperties();
+                    }
+                }
+
+                final OCFile contFile = cls.getContainingOCFile();
+                final OCFile assocFile = contFile == null ? null : contFile.getAssociatedFile();
+                final List<OCProperty> result = Collections.unmodifiableList(new ArrayList<OCProperty>(properties));
+                return assocFile == null ? Result.create(result, cls.getContainingFile()) : Result.create(result, cls.getContainingFile(), assocFile);
+            }
+        }, false);
+    }
+
+    private static final Pattern SUPERCLASS_PATTERN = Pattern.compile("@interface\\s+(\\w+)\\s*:\\s*(\\w+)");
+    private static final Pattern CATEGORY_PATTERN = Pattern.compile("@interface\\s+(\\w+)\\s*\\(");
+
+    /**
+     * Finds all class interfaces in the project headers that are subclasses of the given class
+     * or are preceded by a comment containing the marker. Has to be called in a read action.
+     * @param project
+     * @param superClass super class name, direct or indirect, null or empty to ignore.
+     * @param marker comment marker, null or empty to ignore.
+     * @return
+     */
+    public static List<OCInterface> findModelClasses(Project project, String superClass, String marker) {
+        final PsiManager psiManager = PsiManager.getInstance(project);
+        final List<OCInterface> interfaces = new ArrayList<OCInterface>();
+        final Map<String, String> superClasses = new HashMap<String, String>();
+        for (VirtualFile vFile : FilenameIndex.getAllFilesByExt(project, "h", GlobalSearchScope.projectScope(project))) {
+            final PsiFile file = psiManager.findFile(vFile);
+            if (file == null){
+                continue;
+            }
+
+            for (OCInterface ocInterface : PsiTreeUtil.findChildrenOfType(file, OCInterface.class)) {
+                // Categories and class extensions are not models.
+                if (CATEGORY_PATTERN.matcher(ocInterface.getText()).lookingAt()){
+                    continue;
+                }
+
+                interfaces.add(ocInterface);
+
+                final String superName = getSuperClassName(ocInterface);
+                if (superName != null){
+                    superClasses.put(ocInterface.getName(), superName);
+                }
+            }
+        }
+
+        final List<OCInterface> models = new ArrayList<OCInterface>();
+        for (OCInterface ocInterface : interfaces) {
+            if (hasMarker(ocInterface, marker) || isSubclassOf(ocInterface.getName(), superClass, superClasses)){
+                models.add(ocInterface);
+            }
+        }
+
+        return models;
+    }
+
+    /**
+     * Returns name of the direct super class as written in the @interface header.
+     * @param ocInterface
+     * @return
+     */
+    public static String getSuperClassName(OCInterface ocInterface) {
+        final Matcher matcher = SUPERCLASS_PATTERN.matcher(ocInterface.getText());
+        return matcher.lookingAt() ? matcher.group(2) : null;
+    }
+
+    private static boolean isSubclassOf(String cName, String superClass, Map<String, String> superClasses) {
+        if (StringUtil.isEmpty(superClass)){
+            return false;
+        }
+
+        // Walk the hierarchy, guard against cycles in broken code.
+        final Set<String> visited = new HashSet<String>();
+        String cur = superClasses.get(cName);
+        while (cur != null && visited.add(cur)){
+            if (superClass.equals(cur)){
+                return true;
+            }
+
+            cur = superClasses.get(cur);
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns comments attached to the element: comments on the lines right above it and a trailing comment on its last line.
+     * Trailing comment of the previous element is not attached.
+     * @param element
+     * @return
+     */
+    public static List<String> getAttachedComments(PsiElement element) {
+        final List<String> comments = new ArrayList<String>();
+        PsiElement prev = element.getPrevSibling();
+        while (prev instanceof PsiWhiteSpace || prev instanceof PsiComment){
+            if (prev instanceof PsiWhiteSpace && StringUtil.countNewLines(prev.getText()) > 1){
+                break;
+            }
+
+            if (prev instanceof PsiComment){
+                if (isTrailingComment(prev)){
+                    break;
+                }
+
+                comments.add(prev.getText());
+            }
+
+            prev = prev.getPrevSibling();
+        }
+
+        PsiElement next = element.getNextSibling();
+        while (next instanceof PsiWhiteSpace && !next.getText().contains("\n")){
+            next = next.getNextSibling();
+        }
+
+        if (next instanceof PsiComment){
+            comments.add(next.getText());
+        }
+
+        return comments;
+    }
+
+    private static boolean hasMarker(PsiElement element, String marker) {
+        if (StringUtil.isEmpty(marker)){
+            return false;
+        }
+
+        PsiElement prev = element.getPrevSibling();
+        while (prev instanceof PsiWhiteSpace || prev instanceof PsiComment){
+            if (prev instanceof PsiComment){
+                if (isTrailingComment(prev)){
+                    return false;
+                }
+
+                if (prev.getText().contains(marker)){
+                    return true;
+                }
+            }
+
+            prev = prev.getPrevSibling();
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the comment follows code on the same line, i.e., it belongs to the preceding element.
+     * @param comment
+     * @return
+     */
+    private static boolean isTrailingComment(PsiElement comment) {
+        PsiElement prev = comment.getPrevSibling();
+        while (prev instanceof PsiComment || (prev instanceof PsiWhiteSpace && !prev.getText().contains("\n"))){
+            prev = prev.getPrevSibling();
+        }
+
+        return prev != null && !(prev instanceof PsiWhiteSpace);
+    }
+
+}
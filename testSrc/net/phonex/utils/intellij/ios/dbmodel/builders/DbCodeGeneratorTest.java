@@ -0,0 +1,316 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.phonex.utils.intellij.ios.dbmodel.builders.SchemaFixture.*;
+import static org.junit.Assert.*;
+
+public class DbCodeGeneratorTest {
+    private final DbModelOptions options = new DbModelOptions();
+    private final TypeRegistry typeRegistry = TypeRegistry.create(options, null);
+
+    private DbCodeGenerator generator(DbSchema schema) {
+        return new DbCodeGenerator(schema, options, typeRegistry);
+    }
+
+    @Test
+    public void notNullPrimitivesOnlyForMappedScalars() {
+        options.notNullPrimitives = true;
+        final String createTable = generator(schema(column("count", "int"), column("rating", "double"), column("delegate", "id"),
+                column("title", "NSString *"))).generateCreateTableString();
+
+        assertTrue(createTable, createTable.contains("INTEGER NOT NULL DEFAULT 0, \"//  \t\t\t\t PEX_DBTEST_FIELD_COUNT"));
+        assertTrue(createTable, createTable.contains("REAL NOT NULL DEFAULT 0.0, \"//  \t\t\t\t PEX_DBTEST_FIELD_RATING"));
+        assertTrue(createTable, createTable.contains("TEXT, \"//  \t\t\t\t PEX_DBTEST_FIELD_DELEGATE"));
+        assertTrue(createTable, createTable.contains("TEXT \"//  \t\t\t\t PEX_DBTEST_FIELD_TITLE"));
+    }
+
+    @Test
+    public void withoutRowidNeedsNaturalKey() {
+        options.withoutRowid = true;
+        final DbSchema schema = schema(column("id", "NSNumber *"), column("code", "NSString *"));
+        final String rowidTable = generator(schema).generateCreateTableString();
+        assertTrue(rowidTable, rowidTable.contains("INTEGER PRIMARY KEY AUTOINCREMENT"));
+        assertFalse(rowidTable, rowidTable.contains("WITHOUT ROWID"));
+
+        options.primaryKey = "code";
+        final String naturalKeyTable = generator(schema).generateCreateTableString();
+        assertTrue(naturalKeyTable, naturalKeyTable.contains("TEXT PRIMARY KEY NOT NULL"));
+        assertTrue(naturalKeyTable, naturalKeyTable.contains("WITHOUT ROWID"));
+        assertFalse(naturalKeyTable, naturalKeyTable.contains("AUTOINCREMENT"));
+    }
+
+    @Test
+    public void naturalKeyIdIsPlainColumn() {
+        options.primaryKey = "code";
+        options.withoutRowid = true;
+        final DbCodeGenerator generator = generator(schema(column("id", "NSNumber *"), column("code", "NSString *")));
+
+        final String createTable = generator.generateCreateTableString();
+        assertTrue(createTable, createTable.contains("\"  %@  INTEGER, \"//  \t\t\t\t PEX_DBTEST_FIELD_ID"));
+        assertTrue(createTable, createTable.contains("\"  %@  TEXT PRIMARY KEY NOT NULL \"//  \t\t\t\t PEX_DBTEST_FIELD_CODE"));
+        assertFalse(createTable, createTable.contains("AUTOINCREMENT"));
+        assertTrue(createTable, createTable.contains("WITHOUT ROWID"));
+
+        final String insert = generator.generateInsertStatementMethod();
+        assertTrue(insert, insert.contains("INSERT INTO %@ (%@, %@) VALUES (?, ?)"));
+        assertTrue(insert, insert.contains("PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_ID, PEX_DBTEST_FIELD_CODE]"));
+        assertEquals(2, generator.getDirtyColumns().size());
+    }
+
+    @Test
+    public void noRowidAliasWithoutIdProperty() {
+        final DbCodeGenerator generator = generator(schema(column("code", "NSString *"), column("title", "NSString *")));
+        assertFalse(generator.isRowidAlias());
+
+        final String createTable = generator.generateCreateTableString();
+        assertFalse(createTable, createTable.contains("PEX_DBTEST_FIELD_ID"));
+        assertFalse(createTable, createTable.contains("PRIMARY KEY"));
+        assertEquals(2, generator.getInsertColumns().size());
+    }
+
+    @Test
+    public void dirtySettersSkipColumnsWithoutGeneratedSetter() {
+        final DbCodeGenerator generator = generator(schema(column("id", "NSNumber *"), column("title", "NSString *"),
+                columnWithoutSetter("created", "NSDate *")));
+
+        final List<GeneratedMethod> setters = generator.generateDirtySetters();
+        assertEquals(1, setters.size());
+        assertEquals("setTitle:", setters.get(0).selector);
+
+        final String contentValues = generator.generateGetDirtyContentValuesMethod().implementation;
+        assertTrue(contentValues, contentValues.contains("if (_dirtyColumns[0] & (1ull << 0)) {"));
+        assertFalse("untracked column is written unconditionally", contentValues.contains("(1ull << 1)"));
+        assertTrue(contentValues, contentValues.contains("[cv put:PEX_DBTEST_FIELD_CREATED date:_created];"));
+    }
+
+    @Test
+    public void dirtySettersUseDeclaredTypeAndIvar() {
+        final DbColumn userId = new DbColumn("userId", DbColumn.toFieldName(PREFIX, "userId"), "NSString *", true,
+                null, false, true, true, "PEXUserId *", "m_userId");
+        final DbCodeGenerator generator = generator(schema(userId));
+
+        final String setter = generator.generateDirtySetters().get(0).implementation;
+        assertTrue(setter, setter.startsWith("- (void)setUserId:(PEXUserId *)userId {\n    m_userId = [userId copy];\n"));
+
+        final String contentValues = generator.generateGetDirtyContentValuesMethod().implementation;
+        assertTrue(contentValues, contentValues.contains("if (m_userId != nil) {\n            [cv put:PEX_DBTEST_FIELD_USER_ID string:m_userId];\n        }\n"));
+    }
+
+    @Test
+    public void dirtyNilIsStoredOnlyWithPutNull() {
+        final DbSchema schema = schema(column("title", "NSString *"));
+        final String withoutPutNull = generator(schema).generateGetDirtyContentValuesMethod().implementation;
+        assertFalse(withoutPutNull, withoutPutNull.contains("putNull:"));
+
+        final TypeRegistry putNullRegistry = TypeRegistry.create(options, null);
+        putNullRegistry.setPutNullSupported(true);
+        final String withPutNull = new DbCodeGenerator(schema, options, putNullRegistry).generateGetDirtyContentValuesMethod().implementation;
+        assertTrue(withPutNull, withPutNull.contains("} else {\n            [cv putNull:PEX_DBTEST_FIELD_TITLE];\n        }"));
+        assertFalse(typeRegistry.getSignature().equals(putNullRegistry.getSignature()));
+    }
+
+    @Test
+    public void upgradeAddsScalarColumnsWithDefault() {
+        options.notNullPrimitives = true;
+        final SchemaSnapshot previous = SchemaSnapshot.update(null, schema(column("title", "NSString *")), typeRegistry);
+        final DbSchema schema = schema(column("title", "NSString *"), column("count", "int"), column("rating", "double"));
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(previous, schema, typeRegistry);
+
+        final String upgrade = generator(schema).generateUpgradeStatementsMethod(snapshot);
+        assertTrue(upgrade, upgrade.contains("if (oldVersion < 2)"));
+        assertTrue(upgrade, upgrade.contains("ADD COLUMN %@ INTEGER NOT NULL DEFAULT 0\", PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_COUNT"));
+        assertTrue(upgrade, upgrade.contains("ADD COLUMN %@ REAL NOT NULL DEFAULT 0.0\", PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_RATING"));
+        assertFalse("existing rows are not rewritten", upgrade.contains("UPDATE"));
+    }
+
+    @Test
+    public void upgradeUsesCreateTableConstraints() {
+        final SchemaSnapshot previous = SchemaSnapshot.update(null, schema(column("title", "NSString *")), typeRegistry);
+        final DbSchema schema = schema(column("title", "NSString *"), column("count", "int"));
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(previous, schema, typeRegistry);
+
+        final String createTable = generator(schema).generateCreateTableString();
+        final String upgrade = generator(schema).generateUpgradeStatementsMethod(snapshot);
+        assertTrue(createTable, createTable.contains("INTEGER \"//  \t\t\t\t PEX_DBTEST_FIELD_COUNT"));
+        assertTrue(upgrade, upgrade.contains("ADD COLUMN %@ INTEGER\", PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_COUNT"));
+    }
+
+    @Test
+    public void upgradeAddsObjectColumnNullable() {
+        final SchemaSnapshot previous = SchemaSnapshot.update(null, schema(column("count", "int")), typeRegistry);
+        final DbSchema schema = schema(column("count", "int"), column("title", "NSString *"), column("delegate", "id"));
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(previous, schema, typeRegistry);
+
+        final String upgrade = generator(schema).generateUpgradeStatementsMethod(snapshot);
+        assertTrue(upgrade, upgrade.contains("ADD COLUMN %@ TEXT\", PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_TITLE"));
+        assertTrue(upgrade, upgrade.contains("ADD COLUMN %@ TEXT\", PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_DELEGATE"));
+        assertFalse("first version columns are in the create table", upgrade.contains("FIELD_COUNT"));
+    }
+
+    @Test
+    public void firstVersionHasNoUpgrade() {
+        final DbSchema schema = schema(column("title", "NSString *"), column("count", "int"));
+        final String upgrade = generator(schema).generateUpgradeStatementsMethod(SchemaSnapshot.update(null, schema, typeRegistry));
+        assertFalse(upgrade, upgrade.contains("ALTER TABLE"));
+    }
+
+    @Test
+    public void bindToStatementFollowsInsertColumns() {
+        final DbSchema schema = schema(column("id", "NSNumber *"), column("title", "NSString *"), column("created", "NSDate *"),
+                column("count", "int"), column("delegate", "id"));
+        final String insert = generator(schema).generateInsertStatementMethod();
+        assertTrue(insert, insert.contains("INSERT INTO %@ (%@, %@, %@, %@) VALUES (?, ?, ?, ?)"));
+        assertTrue(insert, insert.contains("PEX_DBTEST_TABLE_NAME, PEX_DBTEST_FIELD_TITLE, PEX_DBTEST_FIELD_CREATED, PEX_DBTEST_FIELD_COUNT, PEX_DBTEST_FIELD_DELEGATE]"));
+
+        final String bind = generator(schema).generateBindToStatementMethod();
+        assertTrue(bind, bind.contains("    if (_title != nil) {\n        sqlite3_bind_text(stmt, 1, [_title UTF8String], -1, SQLITE_TRANSIENT);\n    } else {\n        sqlite3_bind_null(stmt, 1);\n    }"));
+        assertTrue(bind, bind.contains("sqlite3_bind_double(stmt, 2, [_created timeIntervalSince1970]);"));
+        assertTrue(bind, bind.contains("    sqlite3_bind_int64(stmt, 3, (sqlite3_int64) _count);\n"));
+        assertTrue(bind, bind.contains("sqlite3_bind_null(stmt, 4); // TODO:verify type: id"));
+    }
+
+    @Test
+    public void insertBatchCommitsChunks() {
+        final String batch = generator(schema(column("id", "NSNumber *"), column("title", "NSString *"))).generateInsertBatchMethod();
+        assertTrue(batch, batch.contains("+ (NSUInteger)insertBatch:(NSArray *)models intoDatabase:(struct sqlite3 *)db {"));
+        assertTrue(batch, batch.contains("const NSUInteger chunkSize = " + DbCodeGenerator.BATCH_CHUNK_SIZE + ";"));
+        assertTrue(batch, batch.contains("sqlite3_prepare_v2(db, [[self getInsertStatement] UTF8String], -1, &stmt, NULL)"));
+        assertTrue(batch, batch.contains("PEXDbTest *model = models[i];\n                [model bindToStatement:stmt];"));
+
+        // Statement is prepared once, each chunk is a transaction, rolled back on error, finalized at the end.
+        assertEquals(1, count(batch, "sqlite3_prepare_v2("));
+        assertTrue(batch, batch.indexOf("BEGIN IMMEDIATE TRANSACTION") < batch.indexOf("COMMIT TRANSACTION"));
+        assertTrue(batch, batch.indexOf("COMMIT TRANSACTION") < batch.indexOf("ROLLBACK TRANSACTION"));
+        assertTrue(batch, batch.contains("sqlite3_reset(stmt);\n                sqlite3_clear_bindings(stmt);"));
+        assertTrue(batch, batch.indexOf("sqlite3_finalize(stmt);") > batch.lastIndexOf("ROLLBACK TRANSACTION"));
+    }
+
+    @Test
+    public void projectionsOnlyWhenRequested() {
+        final DbSchema schema = schema(column("id", "NSNumber *"), column("title", "NSString *"));
+        final GeneratedModel plain = generator(schema).generate();
+        assertNull(plain.fullProjection);
+        assertTrue(plain.projections.isEmpty());
+
+        options.fullProjection = true;
+        final GeneratedModel full = generator(schema).generate();
+        assertTrue(full.fullProjection, full.fullProjection.contains("projection = @[PEX_DBTEST_FIELD_ID, PEX_DBTEST_FIELD_TITLE];"));
+        assertTrue(full.projections.isEmpty());
+    }
+
+    @Test
+    public void projectionLoaderDecodesByIndex() {
+        options.projections = "list: title, created";
+        final GeneratedModel model = generator(schema(column("id", "NSNumber *"), column("body", "NSString *"),
+                column("title", "NSString *"), column("created", "NSDate *"))).generate();
+
+        assertEquals(2, model.projections.size());
+        assertEquals("getListProjection", model.projections.get(0).selector);
+        assertTrue(model.projections.get(0).implementation, model.projections.get(0).implementation
+                .contains("projection = @[PEX_DBTEST_FIELD_TITLE, PEX_DBTEST_FIELD_CREATED];"));
+
+        final GeneratedMethod loader = model.projections.get(1);
+        assertEquals("createFromListProjectionCursor:", loader.selector);
+        assertTrue(loader.implementation, loader.implementation.contains("_title = [c getString:0];"));
+        assertTrue(loader.implementation, loader.implementation.contains("_created = [PEXDbModelBase getDateFromCursor:c idx:1];"));
+        assertFalse(loader.implementation, loader.implementation.contains("_body"));
+    }
+
+    @Test
+    public void projectionWithUnknownPropertyIsSkipped() {
+        options.projections = "list: title, craeted; detail: title, body";
+        final DbCodeGenerator generator = generator(schema(column("title", "NSString *"), column("body", "NSString *"),
+                column("created", "NSDate *")));
+
+        assertEquals(Arrays.asList("detail"), new ArrayList<String>(generator.getProjections().keySet()));
+        assertEquals(Arrays.asList("Unknown property craeted in projection list"),
+                DbCodeGenerator.validateProjections(options.projections, Arrays.asList("title", "body", "created")));
+        assertEquals(Arrays.asList("Invalid projection, name: property, property expected: title, body", "Projection empty has no properties"),
+                DbCodeGenerator.validateProjections("title, body; empty: ", Arrays.asList("title", "body")));
+    }
+
+    @Test
+    public void identityCacheLoadsByIdWithCostLimit() {
+        options.identityCache = true;
+        options.identityCacheCostLimit = 4096;
+        final DbCodeGenerator generator = generator(schema(column("id", "NSNumber *"), column("title", "NSString *"),
+                column("count", "int")));
+
+        final List<GeneratedMethod> methods = generator.generateIdentityCacheMethods();
+        final String cache = find(methods, "identityCache").implementation;
+        assertTrue(cache, cache.contains("cache.totalCostLimit = 4096;"));
+        assertFalse(cache, cache.contains("countLimit"));
+
+        final GeneratedMethod load = find(methods, "loadById:");
+        assertEquals("+ (PEXDbTest *)loadById:(NSNumber *)objId;\n", load.declaration);
+        assertTrue(load.implementation, load.implementation.contains("[cache setObject:obj forKey:objId cost:[obj identityCacheCost]];"));
+        assertTrue(load.implementation, load.implementation.contains("@[objId]"));
+        assertTrue(load.implementation, load.implementation.contains("[c close];\n    [cache setObject:"));
+
+        final String cost = find(methods, "identityCacheCost").implementation;
+        assertTrue(cost, cost.contains("cost += [_title lengthOfBytesUsingEncoding:NSUTF8StringEncoding];"));
+        assertFalse(cost, cost.contains("_count"));
+
+        final String delete = find(methods, "deleteById:fromDatabase:").implementation;
+        assertTrue(delete, delete.indexOf("[self invalidateCachedId:objId];") < delete.indexOf("sqlite3_step(stmt)"));
+    }
+
+    @Test
+    public void savePathsInvalidateIdentityCache() {
+        options.dirtyTracking = true;
+        final DbSchema schema = schema(column("id", "NSNumber *"), column("title", "NSString *"));
+        final String invalidate = "    [[self class] invalidateCachedId:_id];\n";
+        assertFalse(generator(schema).generateGetDbContentValuesMethod().contains(invalidate));
+
+        options.identityCache = true;
+        final DbCodeGenerator generator = generator(schema);
+        assertTrue(generator.generateGetDbContentValuesMethod().contains("getDbContentValues {\n" + invalidate));
+        assertTrue(generator.generateGetDirtyContentValuesMethod().implementation.contains("getDirtyContentValues {\n" + invalidate));
+        assertTrue(generator.generateBindToStatementMethod().contains("(struct sqlite3_stmt *)stmt {\n" + invalidate));
+    }
+
+    @Test
+    public void enumeratorNeverResetsCachedInstance() {
+        options.cursorEnumerator = true;
+        final DbSchema schema = schema(column("id", "NSNumber *"), column("title", "NSString *"));
+        final String plain = generator(schema).generateCursorEnumeratorImplementation();
+        assertTrue(plain, plain.contains("if (_reuse && _current != nil) {"));
+
+        options.identityCache = true;
+        final String cached = generator(schema).generateCursorEnumeratorImplementation();
+        assertTrue(cached, cached.contains("if (_reuse && _current != nil && ![PEXDbTest isCachedInstance:_current]) {\n        [_current resetForReuse];"));
+    }
+
+    @Test
+    public void identityCacheNeedsNumberId() {
+        options.identityCache = true;
+        final DbCodeGenerator generator = generator(schema(column("code", "NSString *")));
+        assertTrue(generator.generateIdentityCacheMethods().isEmpty());
+        assertFalse(generator.generateGetDbContentValuesMethod().contains("invalidateCachedId:"));
+    }
+
+    private static GeneratedMethod find(List<GeneratedMethod> methods, String selector) {
+        for (GeneratedMethod method : methods) {
+            if (method.selector.equals(selector)){
+                return method;
+            }
+        }
+
+        fail("Method not generated: " + selector);
+        return null;
+    }
+
+    private static int count(String text, String needle) {
+        int count = 0;
+        for (int idx = text.indexOf(needle); idx >= 0; idx = text.indexOf(needle, idx + needle.length())) {
+            count += 1;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,38 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import java.util.Arrays;
+
+/**
+ * Columns and schemas of the test model class, shared by the builder tests.
+ */
+final class SchemaFixture {
+    static final String PREFIX = "PEX_DBTEST";
+    static final String CLASS_NAME = "PEXDbTest";
+
+    private SchemaFixture() {
+    }
+
+    /**
+     * Column with a generated setter, NSString is the only string compatible type.
+     * @param name
+     * @param type canonical type name.
+     * @return
+     */
+    static DbColumn column(String name, String type) {
+        return new DbColumn(name, DbColumn.toFieldName(PREFIX, name), type, "NSString *".equals(type));
+    }
+
+    /**
+     * Column of a readonly, atomic or otherwise hand written property, dirty tracking cannot generate its setter.
+     * @param name
+     * @param type canonical type name.
+     * @return
+     */
+    static DbColumn columnWithoutSetter(String name, String type) {
+        return new DbColumn(name, DbColumn.toFieldName(PREFIX, name), type, "NSString *".equals(type), null, false, false, false);
+    }
+
+    static DbSchema schema(DbColumn... columns) {
+        return new DbSchema(CLASS_NAME, PREFIX, Arrays.asList(columns));
+    }
+}
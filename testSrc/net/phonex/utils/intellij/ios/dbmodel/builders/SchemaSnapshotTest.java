@@ -0,0 +1,80 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static net.phonex.utils.intellij.ios.dbmodel.builders.SchemaFixture.*;
+import static org.junit.Assert.*;
+
+public class SchemaSnapshotTest {
+    private final TypeRegistry typeRegistry = TypeRegistry.create(new DbModelOptions(), null);
+
+    @Test
+    public void firstSnapshotHasFirstVersion() {
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(null,
+                schema(column("id", "NSNumber *"), column("title", "NSString *"), column("count", "int")), typeRegistry);
+
+        assertEquals(SchemaSnapshot.FIRST_VERSION, snapshot.version);
+        assertEquals(2, snapshot.columns.size());
+        assertNull("identifier is not part of the snapshot", snapshot.getColumn("id"));
+        assertEquals(SchemaSnapshot.FIRST_VERSION, snapshot.getColumn("title").version);
+        assertEquals("INTEGER", snapshot.getColumn("count").sqlType);
+        assertFalse(snapshot.getColumn("count").removed);
+    }
+
+    @Test
+    public void unchangedSchemaKeepsVersion() {
+        final DbSchema schema = schema(column("id", "NSNumber *"), column("title", "NSString *"), column("count", "int"));
+        final SchemaSnapshot previous = SchemaSnapshot.update(null, schema, typeRegistry);
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(previous, schema, typeRegistry);
+
+        assertEquals(previous.version, snapshot.version);
+        assertEquals(2, snapshot.columns.size());
+        assertEquals(SchemaSnapshot.FIRST_VERSION, snapshot.getColumn("title").version);
+        assertEquals(SchemaSnapshot.FIRST_VERSION, snapshot.getColumn("count").version);
+        assertFalse(snapshot.getColumn("title").removed);
+        assertFalse(snapshot.getColumn("count").removed);
+    }
+
+    @Test
+    public void addedColumnBumpsVersion() {
+        final SchemaSnapshot previous = SchemaSnapshot.update(null, schema(column("id", "NSNumber *"), column("title", "NSString *")), typeRegistry);
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(previous,
+                schema(column("id", "NSNumber *"), column("title", "NSString *"), column("flag", "BOOL")), typeRegistry);
+
+        assertEquals(SchemaSnapshot.FIRST_VERSION + 1, snapshot.version);
+        assertEquals(SchemaSnapshot.FIRST_VERSION, snapshot.getColumn("title").version);
+        assertEquals(SchemaSnapshot.FIRST_VERSION + 1, snapshot.getColumn("flag").version);
+        assertEquals("previous snapshot is not modified", SchemaSnapshot.FIRST_VERSION, previous.version);
+        assertNull(previous.getColumn("flag"));
+
+        final List<SnapshotColumn> added = snapshot.getColumnsAddedIn(snapshot.version);
+        assertEquals(1, added.size());
+        assertEquals("flag", added.get(0).name);
+    }
+
+    @Test
+    public void removedColumnIsMarkedRemoved() {
+        final SchemaSnapshot previous = SchemaSnapshot.update(null,
+                schema(column("id", "NSNumber *"), column("title", "NSString *"), column("count", "int")), typeRegistry);
+        final SchemaSnapshot snapshot = SchemaSnapshot.update(previous, schema(column("id", "NSNumber *"), column("title", "NSString *")), typeRegistry);
+
+        assertEquals("removing a column does not need an upgrade", previous.version, snapshot.version);
+        assertTrue(snapshot.getColumn("count").removed);
+        assertEquals(SchemaSnapshot.FIRST_VERSION, snapshot.getColumn("count").version);
+        assertFalse(snapshot.getColumn("title").removed);
+    }
+
+    @Test
+    public void readdedColumnKeepsVersion() {
+        final DbSchema full = schema(column("id", "NSNumber *"), column("title", "NSString *"), column("count", "int"));
+        final SchemaSnapshot first = SchemaSnapshot.update(null, full, typeRegistry);
+        final SchemaSnapshot removed = SchemaSnapshot.update(first, schema(column("id", "NSNumber *"), column("title", "NSString *")), typeRegistry);
+        final SchemaSnapshot readded = SchemaSnapshot.update(removed, full, typeRegistry);
+
+        assertEquals(SchemaSnapshot.FIRST_VERSION, readded.version);
+        assertFalse(readded.getColumn("count").removed);
+        assertEquals(SchemaSnapshot.FIRST_VERSION, readded.getColumn("count").version);
+    }
+}
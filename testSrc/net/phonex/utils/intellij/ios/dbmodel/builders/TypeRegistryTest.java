@@ -0,0 +1,123 @@
+package net.phonex.utils.intellij.ios.dbmodel.builders;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static net.phonex.utils.intellij.ios.dbmodel.builders.SchemaFixture.*;
+import static org.junit.Assert.*;
+
+public class TypeRegistryTest {
+
+    @Test
+    public void dataIsBase64TextByDefault() {
+        final TypeRegistry registry = TypeRegistry.create(new DbModelOptions(), null);
+        for (String type : new String[]{"NSData *", "NSMutableData *"}) {
+            final TypeMapping mapping = registry.get(column("payload", type));
+            assertEquals(type, "TEXT", mapping.sqlType);
+            assertEquals(type, "data", mapping.putter);
+            assertEquals(type, "[[NSData alloc] initWithBase64EncodedData:[c getString:i] options:0]", mapping.getterFor("i"));
+        }
+    }
+
+    @Test
+    public void blobIsOptIn() {
+        final DbModelOptions options = new DbModelOptions();
+        options.legacyBase64Data = false;
+        final TypeRegistry registry = TypeRegistry.create(options, null);
+        for (String type : new String[]{"NSData *", "NSMutableData *"}) {
+            final TypeMapping mapping = registry.get(column("payload", type));
+            assertEquals(type, "BLOB", mapping.sqlType);
+            assertEquals(type, "blob", mapping.putter);
+            assertEquals(type, "[c getBlob:i]", mapping.getterFor("i"));
+        }
+    }
+
+    @Test
+    public void dataTypes() {
+        assertTrue(TypeRegistry.isDataType("NSData *"));
+        assertTrue(TypeRegistry.isDataType("NSMutableData*"));
+        assertFalse(TypeRegistry.isDataType("NSString *"));
+        assertFalse(TypeRegistry.isDataType(null));
+    }
+
+    @Test
+    public void builtInScalarMappings() {
+        final TypeRegistry registry = TypeRegistry.create(new DbModelOptions(), null);
+        assertEquals("INTEGER", registry.get(column("count", "int")).sqlType);
+        assertEquals("INTEGER", registry.get(column("flag", "BOOL")).sqlType);
+        assertEquals("REAL", registry.get(column("rating", "double")).sqlType);
+        assertEquals("INTEGER", registry.get(column("created", "NSDate *")).sqlType);
+        assertEquals("date", registry.get(column("created", "NSDate *")).putter);
+    }
+
+    @Test
+    public void typeNamesAreNormalized() {
+        final TypeRegistry registry = TypeRegistry.create(new DbModelOptions(), null);
+        assertSame(registry.get(column("title", "NSString *")), registry.get(column("title", "nsstring*")));
+        assertEquals("nsstring*", TypeRegistry.normalize(" NSString * "));
+    }
+
+    @Test
+    public void unknownTypes() {
+        final TypeRegistry registry = TypeRegistry.create(new DbModelOptions(), null);
+        final DbColumn stringCompatible = new DbColumn("name", DbColumn.toFieldName(PREFIX, "name"), "PEXUserName *", true);
+        assertEquals("string", registry.get(stringCompatible).putter);
+        assertNull(registry.get(column("delegate", "id")));
+    }
+
+    @Test
+    public void projectMappingsTakePrecedence() {
+        final TypeMapping state = new TypeMapping("PEXState", "INTEGER", "(PEXState) [[c getInt:$idx] integerValue]", "integer");
+        final TypeMapping date = new TypeMapping("NSDate *", "REAL", "[PEXDbModelBase getDateFromCursor:c idx:$idx]", "date");
+        final TypeMapping incomplete = new TypeMapping("int", null, null, null);
+        final TypeRegistry registry = TypeRegistry.create(new DbModelOptions(), Arrays.asList(state, date, incomplete));
+
+        assertEquals(state.getter, registry.get(column("state", "PEXState")).getter);
+        assertEquals("REAL", registry.get(column("created", "NSDate *")).sqlType);
+        assertEquals("incomplete mapping is ignored", "INTEGER", registry.get(column("count", "int")).sqlType);
+    }
+
+    @Test
+    public void signatureChangesWithMappings() {
+        final TypeRegistry base64 = TypeRegistry.create(true, null);
+        final TypeRegistry blob = TypeRegistry.create(false, null);
+        assertEquals(base64.getSignature(), TypeRegistry.create(true, null).getSignature());
+        assertFalse(base64.getSignature().equals(blob.getSignature()));
+    }
+
+    @Test
+    public void bindersOfBuiltInMappings() {
+        final String[][] expected = {
+                {"NSString *", "sqlite3_bind_text(s, 1, [v UTF8String], -1, SQLITE_TRANSIENT)"},
+                {"NSMutableString *", "sqlite3_bind_text(s, 1, [v UTF8String], -1, SQLITE_TRANSIENT)"},
+                {"NSNumber *", "sqlite3_bind_int64(s, 1, [v longLongValue])"},
+                {"NSDate *", "sqlite3_bind_double(s, 1, [v timeIntervalSince1970])"},
+                {"BOOL", "sqlite3_bind_int64(s, 1, (sqlite3_int64) v)"},
+                {"int", "sqlite3_bind_int64(s, 1, (sqlite3_int64) v)"},
+                {"double", "sqlite3_bind_double(s, 1, v)"},
+                {"NSData *", "sqlite3_bind_text(s, 1, [[v base64EncodedStringWithOptions:0] UTF8String], -1, SQLITE_TRANSIENT)"},
+                {"NSMutableData *", "sqlite3_bind_text(s, 1, [[v base64EncodedStringWithOptions:0] UTF8String], -1, SQLITE_TRANSIENT)"},
+        };
+
+        final TypeRegistry registry = TypeRegistry.create(true, null);
+        for (String[] entry : expected) {
+            final TypeMapping mapping = registry.get(column("value", entry[0]));
+            assertEquals(entry[0], entry[1], mapping.binderFor("s", "1", "v"));
+            assertEquals(entry[0], TypeRegistry.getBinderForPutter(mapping.putter), mapping.binder);
+        }
+
+        final TypeMapping blob = TypeRegistry.create(false, null).get(column("value", "NSData *"));
+        assertEquals("sqlite3_bind_blob(s, 1, [v bytes], (int) [v length], SQLITE_TRANSIENT)", blob.binderFor("s", "1", "v"));
+    }
+
+    @Test
+    public void projectMappingBinderFollowsPutter() {
+        final TypeMapping state = new TypeMapping("PEXState", "INTEGER", "(PEXState) [[c getInt:$idx] integerValue]", "integer");
+        final TypeMapping custom = new TypeMapping("PEXColor *", "TEXT", "[PEXColor fromString:[c getString:$idx]]", "color");
+        final TypeRegistry registry = TypeRegistry.create(true, Arrays.asList(state, custom));
+
+        assertEquals("sqlite3_bind_int64(s, 1, (sqlite3_int64) v)", registry.get(column("state", "PEXState")).binderFor("s", "1", "v"));
+        assertNull("unknown putter has no binder", registry.get(column("color", "PEXColor *")).binderFor("s", "1", "v"));
+    }
+}
@@ -0,0 +1,42 @@
+package net.phonex.utils.intellij.ios.dbmodel.utilities;
+
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.cidr.lang.psi.OCProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PsiUtilityTest extends LightPlatformCodeInsightFixtureTestCase {
+
+    private List<OCProperty> configureProperties(String text) {
+        final PsiFile file = myFixture.configureByText("PEXDbTest.h", text);
+        return new ArrayList<OCProperty>(PsiTreeUtil.findChildrenOfType(file, OCProperty.class));
+    }
+
+    public void testTrailingCommentIsNotAttachedToNextProperty() {
+        final List<OCProperty> properties = configureProperties("@interface PEXDbTest : NSObject\n" +
+                "@property(nonatomic) NSString * first; // @db:index\n" +
+                "@property(nonatomic) NSString * second;\n" +
+                "@end\n");
+
+        assertEquals(2, properties.size());
+        assertEquals(1, PsiUtility.getAttachedComments(properties.get(0)).size());
+        assertTrue(PsiUtility.getAttachedComments(properties.get(0)).get(0).contains("@db:index"));
+        assertTrue(PsiUtility.getAttachedComments(properties.get(1)).isEmpty());
+    }
+
+    public void testLeadingCommentLineIsAttached() {
+        final List<OCProperty> properties = configureProperties("@interface PEXDbTest : NSObject\n" +
+                "@property(nonatomic) NSString * first; // @db:index\n" +
+                "// @db:unique\n" +
+                "@property(nonatomic) NSString * second;\n" +
+                "@end\n");
+
+        assertEquals(2, properties.size());
+        final List<String> comments = PsiUtility.getAttachedComments(properties.get(1));
+        assertEquals(1, comments.size());
+        assertTrue(comments.get(0).contains("@db:unique"));
+    }
+}